@@ -18,15 +18,28 @@ package org.lifstools.mztab.validator.webapp;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.lifstools.mztab.validator.webapp.domain.AppInfo;
+import org.lifstools.mztab.validator.webapp.service.execution.FairValidationScheduler;
+import org.lifstools.mztab.validator.webapp.service.ontology.CachingCvParameterLookupService;
+import org.lifstools.mztab.validator.webapp.service.ontology.OboCvParameterLookupService;
+import org.lifstools.mztab.validator.webapp.service.ontology.OboOntologyEngine;
+import org.lifstools.mztab.validator.webapp.service.ontology.OlsOntologyEngine;
+import org.lifstools.mztab.validator.webapp.service.ontology.OntologyEngine;
+import org.lifstools.mztab.validator.webapp.service.ontology.OntologyResponseCache;
+import org.lifstools.mztab.validator.webapp.service.ontology.ResilientCvParameterLookupService;
 import org.lifstools.mztab2.cvmapping.CvParameterLookupService;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 import org.lifstools.mztab2.io.serialization.ParameterConverter;
 import org.lifstools.mztab2.server.config.LocalDateConverter;
 import org.lifstools.mztab2.server.config.LocalDateTimeConverter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.MessageSource;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.context.support.ResourceBundleMessageSource;
 import org.springframework.format.FormatterRegistry;
 import org.springframework.scheduling.annotation.EnableAsync;
@@ -91,26 +104,69 @@ public class WebConfig extends WebMvcConfigurerAdapter {
         return messageSource;
     }
     
-    @Bean(name = "toolThreadPoolTaskExecutor")
-    public Executor threadPoolTaskExecutor() {
+    @Bean(name = "toolThreadPoolTaskExecutor", destroyMethod = "shutdown")
+    public FairValidationScheduler threadPoolTaskExecutor(
+        @Value("${validation.scheduler.threads:0}") int threads,
+        @Value("${validation.scheduler.reservedThreads:1}") int reservedThreads,
+        @Value("${validation.scheduler.smallCostThreshold:5000000}") long smallCostThreshold,
+        @Value("${validation.scheduler.semanticCostFactor:4}") double semanticCostFactor,
+        @Value("${validation.scheduler.aging:PT30S}") String aging) {
+        return new FairValidationScheduler(threads > 0 ? threads : Math.max(1,
+            Runtime.getRuntime().availableProcessors() - 1), reservedThreads,
+            smallCostThreshold, semanticCostFactor, Duration.parse(aging));
+    }
+
+    @Bean(name = "semanticValidationTaskExecutor")
+    public Executor semanticValidationTaskExecutor(
+        @Value("${validation.semantic.threads:0}") int threads,
+        @Value("${validation.semantic.queueCapacity:1000}") int queueCapacity) {
         ThreadPoolTaskExecutor tpe = new ThreadPoolTaskExecutor();
-        tpe.setCorePoolSize(Math.max(1, Runtime.getRuntime().availableProcessors()-1));
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        tpe.setCorePoolSize(poolSize);
+        tpe.setMaxPoolSize(poolSize);
+        tpe.setQueueCapacity(queueCapacity);
+        tpe.setThreadNamePrefix("semantic-validation-");
+        // rule tasks never wait on other rule tasks, so running them on the
+        // submitting thread is a safe way to apply back pressure
+        tpe.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
         return tpe;
     }
     
+    @Bean(name = "ontologyLookupTaskExecutor")
+    public Executor ontologyLookupTaskExecutor(
+        @Value("${ontology.lookup.threads:8}") int threads,
+        @Value("${ontology.lookup.queueCapacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor tpe = new ThreadPoolTaskExecutor();
+        tpe.setCorePoolSize(threads);
+        tpe.setMaxPoolSize(threads);
+        tpe.setQueueCapacity(queueCapacity);
+        tpe.setThreadNamePrefix("ontology-lookup-");
+        // lookups never wait on other lookups, see semanticValidationTaskExecutor
+        tpe.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return tpe;
+    }
+
+    @Bean(name = "ontologySuggestionTaskExecutor")
+    public Executor ontologySuggestionTaskExecutor(
+        @Value("${ontology.suggest.threads:8}") int threads,
+        @Value("${ontology.suggest.queueCapacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor tpe = new ThreadPoolTaskExecutor();
+        tpe.setCorePoolSize(threads);
+        tpe.setMaxPoolSize(threads);
+        tpe.setQueueCapacity(queueCapacity);
+        tpe.setThreadNamePrefix("ontology-suggest-");
+        // running a rejected lookup on the request thread would escape the
+        // suggestion deadline, so it is rejected and the term skipped
+        tpe.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return tpe;
+    }
+
     @Override
     public void addFormatters(FormatterRegistry registry) {
         registry.addConverter(new LocalDateConverter("yyyy-MM-dd"));
         registry.addConverter(new LocalDateTimeConverter("yyyy-MM-dd'T'HH:mm:ss.SSS"));
     }
     
-    @Bean
-    public CvParameterLookupService cvParameterLookupService() {
-        OLSWsConfig config = new OLSWsConfig();
-        OLSClient client = new OLSClient(config);
-        return new CvParameterLookupService(client);
-    }
-    
     @Bean
     public ObjectMapper objectMapper() {
         ObjectMapper mapper = new ObjectMapper();
@@ -126,8 +182,51 @@ public class WebConfig extends WebMvcConfigurerAdapter {
     }
 
     @Bean
-    public CvParameterLookupService cvParameterLookupService(@Autowired OLSClient client) {
-        return new CvParameterLookupService(client);
+    public OboOntologyEngine oboOntologyEngine(
+        @Value("${ontology.snapshot.directory:ontologies}") String snapshotDirectory) {
+        return new OboOntologyEngine(Paths.get(snapshotDirectory));
+    }
+
+    @Bean
+    public ResilientCvParameterLookupService resilientCvParameterLookupService(
+        @Autowired OLSClient client,
+        @Value("${ontology.lookup.maxConcurrent:8}") int maxConcurrent,
+        @Value("${ontology.lookup.timeout:PT5S}") String timeout,
+        @Value("${ontology.lookup.queueTimeout:PT1S}") String queueTimeout,
+        @Value("${ontology.lookup.failureThreshold:5}") int failureThreshold,
+        @Value("${ontology.lookup.openDuration:PT30S}") String openDuration) {
+        return new ResilientCvParameterLookupService(client, maxConcurrent,
+            Duration.parse(timeout), Duration.parse(queueTimeout),
+            failureThreshold, Duration.parse(openDuration));
+    }
+
+    @Bean
+    @Primary
+    public OntologyEngine ontologyEngine(@Value("${ontology.engine:ols}") String engine,
+        @Autowired OboOntologyEngine oboOntologyEngine,
+        @Autowired OLSClient client,
+        @Autowired ResilientCvParameterLookupService resilientCvParameterLookupService,
+        @Autowired OntologyResponseCache ontologyResponseCache,
+        @Value("${ontology.lookup.bulkTimeout:PT60S}") String bulkTimeout) {
+        switch (engine) {
+            case "offline":
+                return oboOntologyEngine;
+            case "ols":
+                // local snapshots answer hierarchy checks for the terms they contain
+                return new OlsOntologyEngine(client,
+                    new OboCvParameterLookupService(oboOntologyEngine::getStore,
+                        new CachingCvParameterLookupService(resilientCvParameterLookupService, ontologyResponseCache)),
+                    oboOntologyEngine::getStore, ontologyResponseCache, resilientCvParameterLookupService,
+                    Duration.parse(bulkTimeout));
+            default:
+                throw new IllegalArgumentException("Unknown ontology.engine '" + engine + "', use 'ols' or 'offline'!");
+        }
+    }
+
+    @Bean
+    @Primary
+    public CvParameterLookupService cvParameterLookupService(@Autowired OntologyEngine ontologyEngine) {
+        return ontologyEngine.getLookupService();
     }
 
     @Bean
@@ -43,6 +43,8 @@ import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -73,7 +75,7 @@ import org.springframework.web.util.UriComponents;
 import uk.ac.ebi.pride.jmztab2.model.MZTabConstants;
 import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabErrorList;
 import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabErrorType;
-import uk.ac.ebi.pride.utilities.ols.web.service.model.Ontology;
+import org.lifstools.mztab.validator.webapp.service.ontology.OntologyInfo;
 //import uk.ac.ebi.pride.jmztab2.errors.MZTabErrorType;
 
 /**
@@ -182,14 +184,14 @@ public class MzTabController {
                         -> {
                     Integer index = ++idx;
                     CvReference ref = cvReferences.get(idx);
-                    Optional<Ontology> ontology = mappingService.resolveCv(ref.getCvIdentifier());
+                    Optional<OntologyInfo> ontology = mappingService.resolveCv(ref.getCvIdentifier());
                     ontology.ifPresent((ont) -> {
                         log.debug("Retrieved ontology {} for query {}", ontology, ref.getCvIdentifier());
                         metadata.addCvItem(new CV().id(index).
-                                fullName((ont.getDescription()==null?ont.getNamespace():ont.getDescription()).replaceAll("\t", " ")).
+                                fullName((ont.getTitle()==null?ref.getCvIdentifier():ont.getTitle()).replaceAll("\t", " ")).
                                 label(ref.getCvIdentifier()).
                                 uri("https://www.ebi.ac.uk/ols/ontologies/" + ref.getCvIdentifier().toLowerCase()).
-                                version(ont.getConfig().getVersion()));
+                                version(ont.getVersion()));
                     });
                 }
                 );
@@ -289,6 +291,13 @@ public class MzTabController {
 
     private void addProperties(ModelAndView modelAndView) {
         modelAndView.addObject("metadataProperties", Metadata.Properties.values());
+        Map<String, String> cvRules = new HashMap<>();
+        for (Metadata.Properties prop : Metadata.Properties.values()) {
+            mappingService.getRuleForProperty(Metadata.class.getSimpleName().toLowerCase() + "." + prop.name()).ifPresent((rule) -> {
+                cvRules.put(prop.name(), rule.getId());
+            });
+        }
+        modelAndView.addObject("cvRules", cvRules);
         modelAndView.addObject("metadataGeneralProperties", Arrays.stream(Metadata.Properties.values()).filter((prop) -> {
             switch (prop) {
                 case contact:
@@ -18,12 +18,13 @@ package org.lifstools.mztab.validator.webapp.controller;
 import org.lifstools.mztab.validator.webapp.ExampleFileConfig;
 import org.lifstools.mztab.validator.webapp.domain.AppInfo;
 import org.lifstools.mztab.validator.webapp.domain.Page;
+import org.lifstools.mztab.validator.webapp.domain.PreviewTable;
 import org.lifstools.mztab.validator.webapp.domain.ToolResult;
 import org.lifstools.mztab.validator.webapp.domain.ToolResult.Keys;
 import org.lifstools.mztab.validator.webapp.domain.UserSessionFile;
 import org.lifstools.mztab.validator.webapp.domain.ValidationForm;
 import org.lifstools.mztab.validator.webapp.domain.ValidationLevel;
-import org.lifstools.mztab.validator.webapp.domain.ValidationResult;
+import org.lifstools.mztab.validator.webapp.domain.ValidationResultView;
 import org.lifstools.mztab.validator.webapp.domain.ValidationStatistics;
 import org.lifstools.mztab.validator.webapp.service.SessionIdGenerator;
 import org.lifstools.mztab.validator.webapp.service.StorageService;
@@ -31,11 +32,11 @@ import org.lifstools.mztab.validator.webapp.service.StorageService.SLOT;
 import org.lifstools.mztab.validator.webapp.service.ToolResultService;
 import org.lifstools.mztab.validator.webapp.service.ValidationService;
 import org.lifstools.mztab.validator.webapp.service.ValidationService.Status;
+import org.lifstools.mztab.validator.webapp.service.execution.ValidationEventBroadcaster;
 import org.lifstools.mztab.validator.webapp.service.storage.StorageException;
 import org.lifstools.mztab.validator.webapp.service.storage.StorageFileNotFoundException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.EnumMap;
@@ -48,8 +49,8 @@ import javax.ws.rs.QueryParam;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -61,6 +62,7 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.multipart.MultipartException;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.NoHandlerFoundException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import org.springframework.web.util.UriComponents;
@@ -79,6 +81,7 @@ public class ValidationController {
     private final SessionIdGenerator sessionIdGenerator;
     private final ToolResultService resultService;
     private final AppInfo appInfo;
+    private final ValidationEventBroadcaster validationEventBroadcaster;
     private int maxErrors = 100;
 
     @Value("${minCleanupAge}")
@@ -93,13 +96,15 @@ public class ValidationController {
     public ValidationController(StorageService storageService,
         ValidationService validationService,
         SessionIdGenerator sessionIdGenerator, ToolResultService resultService,
-        AppInfo appInfo, ExampleFileConfig exampleFileConfig) {
+        AppInfo appInfo, ExampleFileConfig exampleFileConfig,
+        ValidationEventBroadcaster validationEventBroadcaster) {
         this.storageService = storageService;
         this.validationService = validationService;
         this.sessionIdGenerator = sessionIdGenerator;
         this.resultService = resultService;
         this.appInfo = appInfo;
         this.exampleFileConfig = exampleFileConfig;
+        this.validationEventBroadcaster = validationEventBroadcaster;
     }
 
     @GetMapping("/")
@@ -129,18 +134,14 @@ public class ValidationController {
         if (storageService.load(usf, SLOT.MZTABFILE) == null) {
             throw new StorageException("Could not load user session file!");
         }
-        UserSessionFile validationFile;
-        if (validationForm.getMappingFile() == null || validationForm.getMappingFile().isEmpty()) {
-            validationFile = storageService.
-                store(new ClassPathResource("/mappings/mzTab-M-mapping.xml").getURL(), usf.
-                        getSessionId(), SLOT.MAPPINGFILE);
-        } else {
-            validationFile = storageService.store(validationForm.
+        // sessions without a mapping file use the shared default rule set
+        if (validationForm.getMappingFile() != null && !validationForm.getMappingFile().isEmpty()) {
+            UserSessionFile validationFile = storageService.store(validationForm.
                 getMappingFile(), "semantic-validation.xml", usf.getSessionId(),
                 SLOT.MAPPINGFILE);
-        }
-        if (storageService.load(validationFile, SLOT.MAPPINGFILE) == null) {
-            throw new StorageException("Could not load mapping file!");
+            if (storageService.load(validationFile, SLOT.MAPPINGFILE) == null) {
+                throw new StorageException("Could not load mapping file!");
+            }
         }
         UriComponents uri = ServletUriComponentsBuilder
             .fromServletMapping(request).
@@ -175,7 +176,9 @@ public class ValidationController {
             getStatus();
         if (status == Status.UNINITIALIZED) {
             UserSessionFile usf = storageService.load(sessionId, SLOT.MZTABFILE);
-            UserSessionFile mappingFile = storageService.load(sessionId, SLOT.MAPPINGFILE);
+            UserSessionFile mappingFile = storageService.find(sessionId,
+                SLOT.MAPPINGFILE).
+                orElse(null);
             ToolResult toolResult = resultService.getOrCreateResultFor(
                 sessionId);
             Map<ToolResult.Keys, String> parameters = new EnumMap(
@@ -187,6 +190,8 @@ public class ValidationController {
                 level.name());
             parameters.putIfAbsent(ToolResult.Keys.CHECKCVMAPPING, Boolean.
                 toString(checkCvMapping));
+            parameters.putIfAbsent(ToolResult.Keys.CLIENT, "session:"
+                + session.getId());
             toolResult.setParameters(parameters);
             resultService.addResultFor(sessionId, toolResult);
             validationService.runValidation(version, usf, maxErrors,
@@ -262,57 +267,69 @@ public class ValidationController {
         log.debug("Check cv mapping is {}", checkCvMapping);
         modelAndView.addObject("status", result.getStatus());
         log.debug("Current status is {}", result.getStatus());
+        modelAndView.addObject("progress", ValidationEventBroadcaster.
+            progressOf(result));
+        modelAndView.addObject("validationProgress", result.getValidationProgress());
         switch (result.getStatus()) {
             case FAILED:
-                modelAndView.addObject("progress", 0);
                 modelAndView.addObject("message", result.getException().
                     getMessage());
                 modelAndView.addObject("messageLevel", "alert-danger");
-                addValidationResults(modelAndView, validationService.
-                    asValidationResults(result.getMessages()), level, maxErrors,
-                    validationVersion, validatedFile, validationLevel);
-                break;
-            case PREPARING:
-                modelAndView.addObject("progress", 10);
-                modelAndView.addObject("refresh", 1);
-                break;
-            case STARTED:
-                modelAndView.addObject("progress", 25);
-                modelAndView.addObject("refresh", 2);
-                break;
-            case RUNNING:
-                modelAndView.addObject("progress", 50);
-                modelAndView.addObject("refresh", 5);
+                addValidationResults(modelAndView, result, level, maxErrors,
+                    validationVersion);
                 break;
             case FINISHED:
-                modelAndView.addObject("progress", 100);
-                addValidationResults(modelAndView, validationService.
-                    asValidationResults(result.getMessages()), level, maxErrors,
-                    validationVersion, validatedFile, validationLevel);
+                addValidationResults(modelAndView, result, level, maxErrors,
+                    validationVersion);
+                break;
+            case CANCELLED:
+                modelAndView.addObject("message", "The validation has been cancelled.");
+                modelAndView.addObject("messageLevel", "alert-warning");
                 break;
             default:
-                modelAndView.addObject("progress", 0);
-                modelAndView.addObject("refresh", 1);
+                // status updates are pushed to the page, reloading is the fallback without javascript
+                modelAndView.addObject("events", true);
+                modelAndView.addObject("refresh", 5);
         }
         return modelAndView;
     }
 
+    @GetMapping(value = "/result/{sessionId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter getResultEvents(@PathVariable String sessionId,
+        HttpSession session) {
+        if (session == null) {
+            throw new StorageFileNotFoundException("No session for events of "
+                + sessionId + "!");
+        }
+        UUID userSessionId = UUID.fromString(sessionId);
+        if (storageService.find(userSessionId, SLOT.MZTABFILE).
+            isEmpty()) {
+            throw new StorageFileNotFoundException(
+                "No results for session id " + sessionId + "!");
+        }
+        ToolResult result = resultService.getOrCreateResultFor(userSessionId);
+        if (result.getStatus() == Status.UNINITIALIZED) {
+            throw new StorageFileNotFoundException(
+                "No results for session id " + sessionId + "!");
+        }
+        return validationEventBroadcaster.subscribe(userSessionId, result);
+    }
+
     protected void addValidationResults(ModelAndView modelAndView,
-        List<ValidationResult> validationResults, ValidationLevel level,
-        Integer maxErrors1, ValidationService.MzTabVersion validationVersion,
-        UserSessionFile usf, ValidationLevel validationLevel) {
-        ValidationStatistics vs = new ValidationStatistics(
-            validationResults);
+        ToolResult result, ValidationLevel level,
+        Integer maxErrors1, ValidationService.MzTabVersion validationVersion) {
+        ValidationResultView resultView = result.getResultView();
+        if (resultView == null) {
+            resultView = validationService.asResultView(result.getMessages(),
+                level, maxErrors1, result.getMzTabContents());
+            result.setResultView(resultView);
+        }
+        ValidationStatistics vs = resultView.getValidationStatistics();
         modelAndView.addObject("validationStatistics", vs);
         modelAndView.addObject("noWarningsOrErrors", vs.getNoErrorsOrWarnings());
         modelAndView.addObject("validationResults",
-            validationService.
-                filterByLevel(validationResults, level).
-                subList(0,
-                    Math.min(validationResults.size(), maxErrors1)));
-        Map<String, List<Map<String, String>>> mzTabContents = validationService.
-            parse(validationVersion,
-                usf, maxErrors1, validationLevel);
+            resultView.getValidationResults());
+        Map<String, PreviewTable> mzTabContents = resultView.getMzTabContents();
         if (validationVersion == ValidationService.MzTabVersion.MZTAB_2_0) {
             addDataRowsFor(modelAndView, mzTabContents, "META");
             addDataRowsFor(modelAndView, mzTabContents, "SUMMARY");
@@ -327,20 +344,14 @@ public class ValidationController {
     }
 
     protected void addDataRowsFor(ModelAndView modelAndView,
-        Map<String, List<Map<String, String>>> mzTabContents, String key) {
-        modelAndView.addObject(key.toLowerCase() + "DataRows", mzTabContents.
-            getOrDefault(key, Collections.emptyList()));
-        Collection<String> featureKeys = mzTabContents.getOrDefault(key,
-            Collections.emptyList()).
-            stream().
-            findFirst().
-            map((t) ->
-            {
-                return t.keySet();
-            }).
-            orElse(Collections.emptySet());
+        Map<String, PreviewTable> mzTabContents, String key) {
+        PreviewTable table = mzTabContents.getOrDefault(key,
+            PreviewTable.EMPTY);
+        modelAndView.addObject(key.toLowerCase() + "DataRows", table.getRows());
         modelAndView.
-            addObject(key.toLowerCase() + "DataColumnKeys", featureKeys);
+            addObject(key.toLowerCase() + "DataColumnKeys", table.getColumns());
+        modelAndView.
+            addObject(key.toLowerCase() + "DataTotalRows", table.getTotalRows());
     }
 
     @GetMapping("/about")
@@ -359,6 +370,29 @@ public class ValidationController {
         return mav;
     }
 
+    @PostMapping(value = "/validate/{sessionId:.+}/cancel")
+    public ModelAndView cancelValidation(@PathVariable UUID sessionId,
+        HttpServletRequest request,
+        HttpSession session, RedirectAttributes redirectAttrs) {
+        if (session == null) {
+            return redirectToServletRoot(request);
+        }
+        if (sessionId == null) {
+            throw new IllegalArgumentException("Please supply your session-id!");
+        }
+        if (!validationService.cancel(sessionId)) {
+            redirectAttrs.addFlashAttribute("message",
+                "Validation for session " + sessionId.toString() + " is not running!");
+            redirectAttrs.addFlashAttribute("messageLevel", "alert-warning");
+        }
+        UriComponents uri = ServletUriComponentsBuilder
+            .fromServletMapping(request).
+            pathSegment("result", sessionId.toString()).
+            build();
+        return new ModelAndView(
+            "redirect:" + uri.toUriString());
+    }
+
     @GetMapping(value = "/validate/{sessionId:.+}/delete")
     public ModelAndView deleteResults(@PathVariable UUID sessionId,
         HttpServletRequest request,
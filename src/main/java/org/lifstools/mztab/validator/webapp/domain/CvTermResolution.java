@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.domain;
+
+import java.util.List;
+import lombok.Data;
+
+/**
+ * The result of resolving a cv label and accession pair.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Data
+public class CvTermResolution {
+
+    public static enum Status {
+        RESOLVED, NOT_FOUND, ONTOLOGY_UNAVAILABLE, INVALID
+    };
+
+    private String cvLabel;
+    private String accession;
+    private Status status;
+    private String name;
+    private Boolean obsolete;
+    private List<String> parents;
+    private String message;
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.domain;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A preview of one mzTab section. Only the first rows of the section are
+ * materialized, {@link #getTotalRows()} reports the size of the complete
+ * section.
+ *
+ * Cell values are stored column-wise: each column has a dictionary of its
+ * distinct values and an array of int codes into that dictionary, one per
+ * row. {@link #getRows()} provides read-only map views of the rows, keyed by
+ * column name, for templates and JSON serialization.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+public class PreviewTable {
+
+    public static final String LINE_NUMBER = "LINE_NUMBER";
+
+    public static final PreviewTable EMPTY = new Builder(Collections.
+        emptyList()).build(0);
+
+    private final List<String> columns;
+    private final Map<String, Integer> columnIndex;
+    private final int[] lineNumbers;
+    private final String[][] dictionaries;
+    private final int[][] codes;
+    private final int totalRows;
+    private final List<Map<String, String>> rows;
+
+    private PreviewTable(List<String> columns, int[] lineNumbers,
+        String[][] dictionaries, int[][] codes, int totalRows) {
+        List<String> header = new ArrayList<>(columns.size() + 1);
+        header.add(LINE_NUMBER);
+        header.addAll(columns);
+        this.columns = Collections.unmodifiableList(header);
+        this.columnIndex = new HashMap<>(header.size() * 2);
+        for (int i = 0; i < columns.size(); i++) {
+            columnIndex.put(columns.get(i), i);
+        }
+        this.lineNumbers = lineNumbers;
+        this.dictionaries = dictionaries;
+        this.codes = codes;
+        this.totalRows = totalRows;
+        this.rows = new RowList();
+    }
+
+    /**
+     * Returns the column names, starting with {@link #LINE_NUMBER}.
+     *
+     * @return the column names.
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns read-only views of the materialized rows.
+     *
+     * @return the rows of this preview.
+     */
+    public List<Map<String, String>> getRows() {
+        return rows;
+    }
+
+    public int getTotalRows() {
+        return totalRows;
+    }
+
+    /**
+     * Returns true, if not all rows of the section are part of this preview.
+     *
+     * @return true if rows were left out of the preview.
+     */
+    public boolean isTruncated() {
+        return lineNumbers.length < totalRows;
+    }
+
+    /**
+     * Returns the value of a cell.
+     *
+     * @param row the row index.
+     * @param column the column name.
+     * @return the cell value, or null if the column does not exist.
+     */
+    public String getValue(int row, String column) {
+        if (LINE_NUMBER.equals(column)) {
+            return Integer.toString(lineNumbers[row]);
+        }
+        Integer col = columnIndex.get(column);
+        if (col == null) {
+            return null;
+        }
+        return dictionaries[col][codes[col][row]];
+    }
+
+    private class RowList extends AbstractList<Map<String, String>> {
+
+        @Override
+        public Map<String, String> get(int index) {
+            if (index < 0 || index >= lineNumbers.length) {
+                throw new IndexOutOfBoundsException("Row index " + index
+                    + " is out of bounds for " + lineNumbers.length + " rows!");
+            }
+            return new RowView(index);
+        }
+
+        @Override
+        public int size() {
+            return lineNumbers.length;
+        }
+    }
+
+    private class RowView extends AbstractMap<String, String> {
+
+        private final int row;
+
+        RowView(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public String get(Object key) {
+            return key instanceof String ? getValue(row, (String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return LINE_NUMBER.equals(key) || columnIndex.containsKey(key);
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<Entry<String, String>>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new Iterator<Entry<String, String>>() {
+                        private int col = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return col < columns.size();
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            String column = columns.get(col++);
+                            return new SimpleImmutableEntry<>(column, getValue(
+                                row, column));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return columns.size();
+                }
+            };
+        }
+    }
+
+    /**
+     * Collects the rows of a preview table. The value dictionaries are only
+     * kept while the table is built. Not thread safe.
+     */
+    public static class Builder {
+
+        private final List<String> columns;
+        private final List<Map<String, Integer>> dictionaries;
+        private int[] lineNumbers = new int[16];
+        private final int[][] codes;
+        private int size = 0;
+
+        public Builder(List<String> columns) {
+            this.columns = new ArrayList<>(columns);
+            this.dictionaries = new ArrayList<>(columns.size());
+            this.codes = new int[columns.size()][];
+            for (int i = 0; i < columns.size(); i++) {
+                dictionaries.add(new HashMap<>());
+                codes[i] = new int[16];
+            }
+        }
+
+        /**
+         * Adds a row.
+         *
+         * @param lineNumber the line number of the row in the mzTab file.
+         * @param values the cell values, in column order.
+         * @return this builder.
+         */
+        public Builder addRow(int lineNumber, String... values) {
+            if (values.length != columns.size()) {
+                throw new IllegalArgumentException("Expected " + columns.
+                    size() + " values, but got " + values.length + "!");
+            }
+            if (size == lineNumbers.length) {
+                int capacity = size + (size >> 1);
+                lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+                for (int i = 0; i < codes.length; i++) {
+                    codes[i] = Arrays.copyOf(codes[i], capacity);
+                }
+            }
+            lineNumbers[size] = lineNumber;
+            for (int i = 0; i < values.length; i++) {
+                Map<String, Integer> dictionary = dictionaries.get(i);
+                Integer code = dictionary.get(values[i]);
+                if (code == null) {
+                    code = dictionary.size();
+                    dictionary.put(values[i], code);
+                }
+                codes[i][size] = code;
+            }
+            size++;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Creates the preview table.
+         *
+         * @param totalRows the number of rows of the complete section.
+         * @return the preview table.
+         */
+        public PreviewTable build(int totalRows) {
+            String[][] dictionaryArrays = new String[columns.size()][];
+            int[][] codeArrays = new int[columns.size()][];
+            for (int i = 0; i < columns.size(); i++) {
+                Map<String, Integer> dictionary = dictionaries.get(i);
+                String[] values = new String[dictionary.size()];
+                for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
+                    values[entry.getValue()] = entry.getKey();
+                }
+                dictionaryArrays[i] = values;
+                codeArrays[i] = Arrays.copyOf(codes[i], size);
+            }
+            return new PreviewTable(columns, Arrays.copyOf(lineNumbers, size),
+                dictionaryArrays, codeArrays, Math.max(size, totalRows));
+        }
+    }
+}
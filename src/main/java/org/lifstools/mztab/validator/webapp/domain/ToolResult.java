@@ -17,9 +17,10 @@ package org.lifstools.mztab.validator.webapp.domain;
 
 import org.lifstools.mztab2.model.ValidationMessage;
 import java.util.ArrayList;
-import java.util.List;
 import org.lifstools.mztab.validator.webapp.service.ValidationService.Status;
+import java.util.Collections;
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 import lombok.Data;
 
@@ -32,15 +33,23 @@ import lombok.Data;
 public class ToolResult {
 
     public static enum Keys {
-        MZTABVERSION, MAXERRORS, VALIDATIONLEVEL, CHECKCVMAPPING
+        MZTABVERSION, MAXERRORS, VALIDATIONLEVEL, CHECKCVMAPPING, CLIENT
     };
 
     private List<ValidationMessage> messages = new ArrayList<>();
 
+    private List<ValidationMessage> semanticMessages = new ArrayList<>();
+
+    private Map<String, PreviewTable> mzTabContents = Collections.emptyMap();
+
+    private ValidationResultView resultView;
+
     private Exception exception;
 
     private Status status;
 
+    private ValidationProgress validationProgress;
+
     private Map<ToolResult.Keys, String> parameters = new EnumMap<>(Keys.class);
 
     public ToolResult() {
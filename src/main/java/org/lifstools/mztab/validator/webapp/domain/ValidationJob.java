@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.domain;
+
+import java.util.UUID;
+import lombok.Data;
+import org.lifstools.mztab.validator.webapp.domain.ValidationProgress.Stage;
+import org.lifstools.mztab.validator.webapp.service.ValidationService.Status;
+
+/**
+ * The state of a validation job submitted through the REST API. The stage
+ * and read progress are set while the validation is in progress, the line
+ * count is an estimate.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Data
+public class ValidationJob {
+
+    private UUID jobId;
+    private Status status;
+    private Stage stage;
+    private Long bytesRead;
+    private Long bytesTotal;
+    private Long linesRead;
+    private String section;
+    private String statusUrl;
+    private String resultUrl;
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.domain;
+
+/**
+ * The stage a running validation has reached and how far the parser has read
+ * the file. Updated by the validating thread and the read progress poller,
+ * read concurrently by status requests.
+ *
+ * The line count is estimated from the length of the lines at the parser's
+ * position, the parser does not report the lines it has read.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+public class ValidationProgress {
+
+    public static enum Stage {
+        QUEUED("Waiting for a free validation slot", 0.0),
+        PARSING("Parsing and validating the file structure", 0.1),
+        SEMANTIC_VALIDATION("Validating against the CV mapping rules", 0.6),
+        BUILDING_PREVIEW("Building the preview of the file content", 0.9);
+
+        private final String description;
+        private final double fraction;
+
+        Stage(String description, double fraction) {
+            this.description = description;
+            this.fraction = fraction;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        /**
+         * Returns the approximate fraction of the validation that is done
+         * when this stage starts.
+         *
+         * @return a value between 0 and 1.
+         */
+        public double getFraction() {
+            return fraction;
+        }
+    }
+
+    private volatile Stage stage = Stage.QUEUED;
+    private volatile long bytesTotal;
+    private volatile long bytesRead;
+    private volatile long linesRead;
+    private volatile String section;
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    /**
+     * Sets the stage. Once parsing is over, the whole file counts as read.
+     *
+     * @param stage the stage the validation has reached.
+     */
+    public void setStage(Stage stage) {
+        if (stage.compareTo(Stage.PARSING) > 0 && bytesRead > 0 && bytesRead < bytesTotal) {
+            linesRead = Math.round((double) linesRead * bytesTotal / bytesRead);
+            bytesRead = bytesTotal;
+        }
+        this.stage = stage;
+    }
+
+    public long getBytesTotal() {
+        return bytesTotal;
+    }
+
+    public void setBytesTotal(long bytesTotal) {
+        this.bytesTotal = bytesTotal;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public void setBytesRead(long bytesRead) {
+        this.bytesRead = bytesRead;
+    }
+
+    /**
+     * Returns the estimated number of lines read.
+     *
+     * @return the number of lines, 0 if unknown.
+     */
+    public long getLinesRead() {
+        return linesRead;
+    }
+
+    public void setLinesRead(long linesRead) {
+        this.linesRead = linesRead;
+    }
+
+    /**
+     * Returns the section of the lines currently read.
+     *
+     * @return MTD, SML, SMF or SME for mzTab-M, PRT, PEP, PSM or SML for
+     * mzTab 1.0, or null if unknown.
+     */
+    public String getSection() {
+        return section;
+    }
+
+    public void setSection(String section) {
+        this.section = section;
+    }
+
+    /**
+     * Returns the approximate fraction of the validation that is done. While
+     * parsing, the share of the file that has been read advances the
+     * fraction towards the next stage.
+     *
+     * @return a value between 0 and 1.
+     */
+    public double getFraction() {
+        Stage current = stage;
+        long total = bytesTotal;
+        if (current != Stage.PARSING || total <= 0) {
+            return current.getFraction();
+        }
+        double read = Math.min(1.0, (double) bytesRead / total);
+        return current.getFraction() + read * (Stage.SEMANTIC_VALIDATION.
+            getFraction() - current.getFraction());
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.domain;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Data;
+import org.lifstools.mztab2.model.ValidationMessage;
+
+/**
+ * The combined output of a single parse of an mzTab file: structural
+ * validation messages, semantic (cv mapping) validation messages and the
+ * preview table model of the parsed file.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Data
+public class ValidationReport {
+
+    private List<ValidationMessage> messages = new ArrayList<>();
+
+    private List<ValidationMessage> semanticMessages = new ArrayList<>();
+
+    private Map<String, PreviewTable> contents = new LinkedHashMap<>();
+
+    /**
+     * False, if a validation step failed unexpectedly, e.g. because the
+     * ontology lookup service was not available. Incomplete reports are not
+     * reused for later validations of the same file.
+     */
+    private boolean complete = true;
+
+    /**
+     * Returns the structural messages, followed by the semantic messages.
+     *
+     * @return all validation messages of this report.
+     */
+    public List<ValidationMessage> getAllMessages() {
+        List<ValidationMessage> allMessages = new ArrayList<>(messages.size() + semanticMessages.size());
+        allMessages.addAll(messages);
+        allMessages.addAll(semanticMessages);
+        return allMessages;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.domain;
+
+import java.util.List;
+import java.util.Map;
+import lombok.Data;
+
+/**
+ * The view model of a completed validation, as shown on the result page.
+ * It is computed once, when the validation finishes, and is kept with the
+ * {@link ToolResult} of the session.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Data
+public class ValidationResultView {
+
+    /**
+     * The validation results, filtered by level and limited to max errors.
+     */
+    private final List<ValidationResult> validationResults;
+
+    /**
+     * Statistics over all validation results.
+     */
+    private final ValidationStatistics validationStatistics;
+
+    private final Map<String, PreviewTable> mzTabContents;
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.domain;
+
+import lombok.Data;
+import org.lifstools.mztab.validator.webapp.domain.ValidationProgress.Stage;
+import org.lifstools.mztab.validator.webapp.service.ValidationService.Status;
+
+/**
+ * The status of a validation as pushed to the result page. The stage and
+ * read progress are set while the validation is in progress, the message counts once the
+ * validation has finished or failed.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Data
+public class ValidationStatusUpdate {
+
+    private Status status;
+    private int progress;
+    private String message;
+    private Stage stage;
+    private String stageDescription;
+    private Long bytesRead;
+    private Long bytesTotal;
+    private Long linesRead;
+    private String section;
+    private Long errors;
+    private Long warnings;
+    private Long infos;
+
+    /**
+     * Returns true for the final states FINISHED, FAILED and CANCELLED.
+     *
+     * @return true if no further updates will follow.
+     */
+    public boolean isDone() {
+        return status == Status.FINISHED || status == Status.FAILED
+            || status == Status.CANCELLED;
+    }
+}
@@ -18,6 +18,7 @@ package org.lifstools.mztab.validator.webapp.service;
 import org.lifstools.mztab.validator.webapp.domain.UserSessionFile;
 import java.net.URL;
 import java.nio.file.Path;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Stream;
 import org.springframework.core.io.Resource;
@@ -46,10 +47,28 @@ public interface StorageService {
     
     UserSessionFile load(UUID sessionId, SLOT slot);
 
+    /**
+     * Returns the file stored in the slot of the session, if any.
+     *
+     * @param sessionId the session id.
+     * @param slot the slot.
+     * @return the stored file, or an empty optional.
+     */
+    Optional<UserSessionFile> find(UUID sessionId, SLOT slot);
+
     Path load(UserSessionFile userSessionFile, SLOT slot);
 
     Resource loadAsResource(UserSessionFile userSessionFile, SLOT slot);
 
+    /**
+     * Returns the hex encoded SHA-256 hash of the stored file's content.
+     *
+     * @param userSessionFile the stored file.
+     * @param slot the slot of the stored file.
+     * @return the content hash.
+     */
+    String getContentHash(UserSessionFile userSessionFile, SLOT slot);
+
     void deleteAll(UUID sessionId);
 
     void deleteAll();
@@ -16,6 +16,7 @@
 package org.lifstools.mztab.validator.webapp.service;
 
 import org.lifstools.mztab.validator.webapp.domain.ToolResult;
+import java.util.Optional;
 import java.util.UUID;
 
 /**
@@ -27,6 +28,14 @@ public interface ToolResultService {
     void addResultFor(UUID sessionId, ToolResult result);
 
     ToolResult getOrCreateResultFor(UUID sessionId);
+
+    /**
+     * Returns the result of the session without creating a placeholder.
+     *
+     * @param sessionId the session id.
+     * @return the result, or an empty optional if the session has none.
+     */
+    Optional<ToolResult> getResultFor(UUID sessionId);
     
     void deleteResultFor(UUID sessionId);
     
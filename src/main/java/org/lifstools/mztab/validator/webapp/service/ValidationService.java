@@ -15,16 +15,17 @@
  */
 package org.lifstools.mztab.validator.webapp.service;
 
+import org.lifstools.mztab.validator.webapp.domain.PreviewTable;
 import org.lifstools.mztab.validator.webapp.domain.ToolResult;
 import org.lifstools.mztab.validator.webapp.domain.UserSessionFile;
 import org.lifstools.mztab.validator.webapp.domain.ValidationLevel;
 import org.lifstools.mztab.validator.webapp.domain.ValidationResult;
+import org.lifstools.mztab.validator.webapp.domain.ValidationResultView;
 import org.lifstools.mztab2.model.ValidationMessage;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import org.springframework.scheduling.annotation.Async;
 
 /**
  *
@@ -32,23 +33,44 @@ import org.springframework.scheduling.annotation.Async;
  */
 public interface ValidationService {
     public static enum Status {
-        UNINITIALIZED, PREPARING, STARTED, RUNNING, FINISHED, FAILED
+        UNINITIALIZED, PREPARING, STARTED, RUNNING, FINISHED, FAILED, CANCELLED
     };
 
-    @Async
+    /**
+     * Starts the validation of the user session file. The returned future
+     * completes when the validation has finished or failed. A null
+     * validation file selects the default semantic validation rule set.
+     */
     CompletableFuture<ToolResult> runValidation(MzTabVersion mzTabVersion,
         UserSessionFile userSessionFile, int maxErrors,
         ValidationLevel validationLevel, boolean checkCvMapping, UserSessionFile validationFile);
 
     ToolResult getStatus(UUID userSessionId);
+
+    /**
+     * Cancels the running or queued validation of the session. A validation
+     * shared with other sessions keeps running for them.
+     *
+     * @return true if a validation of the session was cancelled.
+     */
+    boolean cancel(UUID userSessionId);
     
     static enum MzTabVersion{MZTAB_1_0, MZTAB_2_0};
     List<ValidationMessage> validate(MzTabVersion version, UserSessionFile userSessionFile, int maxErrors, ValidationLevel validationLevel, boolean checkCvMapping, UserSessionFile validationFile);
+
+    /**
+     * Validates the user session file on behalf of a client. Validations of
+     * the same client share their turn on the validation executor, a null
+     * client is identified by the session of the file.
+     */
+    List<ValidationMessage> validate(MzTabVersion version, UserSessionFile userSessionFile, int maxErrors, ValidationLevel validationLevel, boolean checkCvMapping, UserSessionFile validationFile, String client);
     
-    public Map<String, List<Map<String, String>>> parse(MzTabVersion mzTabVersion,
+    public Map<String, PreviewTable> parse(MzTabVersion mzTabVersion,
         UserSessionFile userSessionFile, int maxErrors, ValidationLevel validationLevel);
     
     List<ValidationResult> asValidationResults(List<ValidationMessage> validationMessage);
     
     List<ValidationResult> filterByLevel(List<ValidationResult> validationResults, ValidationLevel level);
+
+    ValidationResultView asResultView(List<ValidationMessage> validationMessages, ValidationLevel level, int maxErrors, Map<String, PreviewTable> mzTabContents);
 }
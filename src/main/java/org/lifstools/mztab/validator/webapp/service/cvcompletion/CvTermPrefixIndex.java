@@ -0,0 +1,253 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.cvcompletion;
+
+import info.psidev.cvmapping.CvMappingRule;
+import info.psidev.cvmapping.CvTerm;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.lifstools.mztab.validator.webapp.service.ontology.OntologyEngine;
+import org.lifstools.mztab2.cvmapping.CvMappingUtils;
+import org.lifstools.mztab2.model.Parameter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Answers CV term autocompletion queries for the rules of the default
+ * CvMapping rule set from an in-memory prefix index. For each rule, the terms
+ * allowed by the rule are expanded once in the background and their names and
+ * accessions are kept in a sorted array of keys. Each word of a term name
+ * starts a key, so that a query matches the beginning of any word. A query is
+ * a binary search followed by a scan over the matching keys.
+ *
+ * Until the index of a rule is built, queries are answered by
+ * {@link OlsMappingCvSuggestionService#suggestParameters(String, String, int)}.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Slf4j
+@Service
+public class CvTermPrefixIndex {
+
+    private final OntologyEngine ontologyEngine;
+    private final OlsMappingCvSuggestionService suggestionService;
+    private final int maxDepth;
+    private final Map<String, RuleIndex> ruleIndices = new ConcurrentHashMap<>();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+        (runnable) ->
+    {
+        Thread thread = new Thread(runnable, "cv-term-prefix-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public CvTermPrefixIndex(OntologyEngine ontologyEngine,
+        OlsMappingCvSuggestionService suggestionService,
+        @Value("${ontology.autocomplete.maxDepth:10}") int maxDepth) {
+        this.ontologyEngine = ontologyEngine;
+        this.suggestionService = suggestionService;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Returns the terms allowed by the rule whose name or accession has a
+     * word starting with the query.
+     *
+     * @param query the partial term name or accession.
+     * @param ruleId the id of the mapping rule.
+     * @param maxResults the maximum number of terms to return.
+     * @return the matching terms, or an empty optional if the rule is not
+     * known.
+     */
+    public Optional<List<Parameter>> complete(String query, String ruleId,
+        int maxResults) {
+        Optional<CvMappingRule> rule = suggestionService.getRule(ruleId);
+        if (!rule.isPresent()) {
+            return Optional.empty();
+        }
+        RuleIndex index = ruleIndices.get(ruleId);
+        if (index == null) {
+            build(rule.get());
+            List<Parameter> suggestions = suggestionService.suggestParameters(
+                query, rule.get(), maxDepth);
+            return Optional.of(new ArrayList<>(suggestions.subList(0, Math.
+                min(suggestions.size(), maxResults))));
+        }
+        return Optional.of(index.find(normalize(query), maxResults));
+    }
+
+    public boolean isIndexed(String ruleId) {
+        return ruleIndices.containsKey(ruleId);
+    }
+
+    /**
+     * Builds the indices of all rules in the background.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildAll() {
+        suggestionService.getRules().
+            forEach(this::build);
+    }
+
+    /**
+     * Rebuilds the indices of all rules in the background, the current
+     * indices are used until their replacement is built.
+     */
+    @Scheduled(fixedDelayString = "${ontology.autocomplete.refreshInterval:86400000}", initialDelayString = "${ontology.autocomplete.refreshInterval:86400000}")
+    public void refresh() {
+        suggestionService.getRules().
+            forEach((rule) ->
+            {
+                if (pending.add(rule.getId())) {
+                    executor.execute(() -> index(rule));
+                }
+            });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void build(CvMappingRule rule) {
+        if (!ruleIndices.containsKey(rule.getId()) && pending.add(rule.getId())) {
+            executor.execute(() -> index(rule));
+        }
+    }
+
+    private void index(CvMappingRule rule) {
+        try {
+            Map<String, Parameter> terms = new LinkedHashMap<>();
+            for (CvTerm cvTerm : rule.getCvTerm()) {
+                if (cvTerm.isUseTerm()) {
+                    Parameter term = CvMappingUtils.asParameter(cvTerm);
+                    terms.putIfAbsent(term.getCvAccession(), term);
+                }
+                if (cvTerm.isAllowChildren()) {
+                    for (Parameter term : ontologyEngine.getDescendantTerms(
+                        cvTerm.getCvIdentifierRef().
+                            getCvIdentifier(), cvTerm.getTermAccession(),
+                        maxDepth)) {
+                        terms.putIfAbsent(term.getCvAccession(), term);
+                    }
+                }
+            }
+            RuleIndex index = new RuleIndex(new ArrayList<>(terms.values()));
+            ruleIndices.put(rule.getId(), index);
+            log.debug("Indexed {} terms for rule {}", index.terms.length, rule.
+                getId());
+        } catch (RuntimeException ex) {
+            log.warn("Could not index the terms of rule " + rule.getId(), ex);
+        } finally {
+            pending.remove(rule.getId());
+        }
+    }
+
+    static String normalize(String text) {
+        return text == null ? "" : text.replaceAll("[-_:\\s]+", " ").
+            trim().
+            toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The sorted keys of the terms of one rule. keys[i] is a suffix of the
+     * normalized name or accession of the term terms[termOfKey[i]], starting
+     * at a word boundary.
+     */
+    private static class RuleIndex {
+
+        private final Parameter[] terms;
+        private final String[] keys;
+        private final int[] termOfKey;
+
+        RuleIndex(List<Parameter> parameters) {
+            this.terms = parameters.toArray(new Parameter[0]);
+            List<String> unsortedKeys = new ArrayList<>();
+            List<Integer> unsortedTerms = new ArrayList<>();
+            for (int i = 0; i < terms.length; i++) {
+                for (String text : new String[]{terms[i].getName(), terms[i].
+                    getCvAccession()}) {
+                    String normalized = normalize(text);
+                    for (int start = 0; start >= 0 && start < normalized.
+                        length(); start = nextWord(normalized, start)) {
+                        unsortedKeys.add(normalized.substring(start));
+                        unsortedTerms.add(i);
+                    }
+                }
+            }
+            Integer[] order = new Integer[unsortedKeys.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> unsortedKeys.get(a).
+                compareTo(unsortedKeys.get(b)));
+            this.keys = new String[order.length];
+            this.termOfKey = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                keys[i] = unsortedKeys.get(order[i]);
+                termOfKey[i] = unsortedTerms.get(order[i]);
+            }
+        }
+
+        List<Parameter> find(String prefix, int maxResults) {
+            if (prefix.isEmpty()) {
+                return Collections.emptyList();
+            }
+            int i = Arrays.binarySearch(keys, prefix);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            Set<Integer> matches = new LinkedHashSet<>();
+            for (; i < keys.length && matches.size() < maxResults && keys[i].
+                startsWith(prefix); i++) {
+                matches.add(termOfKey[i]);
+            }
+            List<Parameter> result = new ArrayList<>(matches.size());
+            for (Integer match : matches) {
+                // parameters are mutable, hand out copies
+                result.add(new Parameter().
+                    cvLabel(terms[match].getCvLabel()).
+                    cvAccession(terms[match].getCvAccession()).
+                    name(terms[match].getName()));
+            }
+            return result;
+        }
+
+        private static int nextWord(String text, int start) {
+            int space = text.indexOf(' ', start);
+            return space < 0 ? -1 : space + 1;
+        }
+    }
+}
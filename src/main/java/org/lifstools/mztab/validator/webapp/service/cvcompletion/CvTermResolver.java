@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.cvcompletion;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.lifstools.mztab.validator.webapp.domain.CvTermResolution;
+import org.lifstools.mztab.validator.webapp.service.ontology.OntologyEngine;
+import org.lifstools.mztab.validator.webapp.service.ontology.OntologyUnavailableException;
+import org.lifstools.mztab.validator.webapp.service.ontology.TermInfo;
+import org.lifstools.mztab2.model.Parameter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Resolves batches of cv label and accession pairs through the
+ * {@link OntologyEngine}, i.e. from the local snapshots, the ontology
+ * response cache or the remote service. Up to
+ * <code>ontology.resolve.window</code> terms are resolved in parallel on the
+ * ontologyLookupTaskExecutor, results are passed on in the order of the
+ * request as soon as they are available. Repeated pairs within a batch are
+ * resolved once.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Slf4j
+@Service
+public class CvTermResolver {
+
+    private final OntologyEngine ontologyEngine;
+    private final Executor executor;
+    private final int window;
+    private final int maxBatchSize;
+
+    @Autowired
+    public CvTermResolver(OntologyEngine ontologyEngine,
+        @Qualifier("ontologyLookupTaskExecutor") Executor executor,
+        @Value("${ontology.resolve.window:64}") int window,
+        @Value("${ontology.resolve.maxBatchSize:10000}") int maxBatchSize) {
+        this.ontologyEngine = ontologyEngine;
+        this.executor = executor;
+        this.window = Math.max(1, window);
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Resolves the terms.
+     *
+     * @param terms the terms, only the cv label and accession are used.
+     * @param results receives one resolution per term, in the order of the
+     * terms.
+     */
+    public void resolve(List<Parameter> terms,
+        Consumer<CvTermResolution> results) {
+        Map<String, CompletableFuture<CvTermResolution>> resolutions = new HashMap<>();
+        Deque<CompletableFuture<CvTermResolution>> inFlight = new ArrayDeque<>();
+        for (Parameter term : terms) {
+            String key = term.getCvLabel() + "\t" + term.getCvAccession();
+            inFlight.add(resolutions.computeIfAbsent(key,
+                (k) -> CompletableFuture.supplyAsync(() -> resolve(term.
+                getCvLabel(), term.getCvAccession()), executor)));
+            if (inFlight.size() >= window) {
+                results.accept(inFlight.poll().
+                    join());
+            }
+        }
+        while (!inFlight.isEmpty()) {
+            results.accept(inFlight.poll().
+                join());
+        }
+    }
+
+    private CvTermResolution resolve(String cvLabel, String accession) {
+        CvTermResolution resolution = new CvTermResolution();
+        resolution.setCvLabel(cvLabel);
+        resolution.setAccession(accession);
+        if (cvLabel == null || cvLabel.isEmpty() || accession == null
+            || accession.isEmpty()) {
+            resolution.setStatus(CvTermResolution.Status.INVALID);
+            resolution.setMessage("cv_label and cv_accession are required");
+            return resolution;
+        }
+        try {
+            TermInfo term = ontologyEngine.resolveTerm(cvLabel, accession).
+                orElse(null);
+            if (term == null) {
+                resolution.setStatus(CvTermResolution.Status.NOT_FOUND);
+            } else {
+                resolution.setStatus(CvTermResolution.Status.RESOLVED);
+                resolution.setName(term.getName());
+                resolution.setObsolete(term.isObsolete());
+                resolution.setParents(term.getParents());
+            }
+        } catch (OntologyUnavailableException ex) {
+            resolution.setStatus(
+                CvTermResolution.Status.ONTOLOGY_UNAVAILABLE);
+            resolution.setMessage(ex.getMessage());
+        } catch (RuntimeException ex) {
+            log.warn("Could not resolve term " + cvLabel + " " + accession, ex);
+            resolution.setStatus(
+                CvTermResolution.Status.ONTOLOGY_UNAVAILABLE);
+            resolution.setMessage(ex.getMessage());
+        }
+        return resolution;
+    }
+}
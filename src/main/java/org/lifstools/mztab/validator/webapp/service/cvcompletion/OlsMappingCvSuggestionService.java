@@ -15,39 +15,43 @@
  */
 package org.lifstools.mztab.validator.webapp.service.cvcompletion;
 
-import org.lifstools.mztab2.cvmapping.CvMappingUtils;
-import org.lifstools.mztab2.cvmapping.CvParameterLookupService;
-import org.lifstools.mztab2.cvmapping.ParameterComparisonResult;
-import static org.lifstools.mztab2.cvmapping.ParameterComparisonResult.CHILD_OF;
-import static org.lifstools.mztab2.cvmapping.ParameterComparisonResult.IDENTICAL;
 import org.lifstools.mztab2.model.Parameter;
+import org.lifstools.mztab.validator.webapp.service.ontology.OntologyCatalog;
+import org.lifstools.mztab.validator.webapp.service.ontology.OntologyEngine;
+import org.lifstools.mztab.validator.webapp.service.ontology.OntologyInfo;
+import org.lifstools.mztab.validator.webapp.service.validation.CvMappingRuleSetCache;
 import info.psidev.cvmapping.CvMapping;
 import info.psidev.cvmapping.CvMappingRule;
 import info.psidev.cvmapping.CvReference;
-import java.io.IOException;
+import info.psidev.cvmapping.CvTerm;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.DefaultResourceLoader;
-import org.springframework.core.io.Resource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.ResourceAccessException;
-import uk.ac.ebi.pride.utilities.ols.web.service.client.OLSClient;
-import uk.ac.ebi.pride.utilities.ols.web.service.model.Identifier;
-import uk.ac.ebi.pride.utilities.ols.web.service.model.Ontology;
-import uk.ac.ebi.pride.utilities.ols.web.service.model.Term;
 
 /**
+ * Suggests cv parameters for the rules of the default CvMapping rule set.
+ * The terms of a rule are queried concurrently on the
+ * ontologySuggestionTaskExecutor. Each query is bounded by
+ * <code>ontology.suggest.callTimeout</code>, the whole suggestion by
+ * <code>ontology.suggest.deadline</code>. Terms whose query did not finish in
+ * time, failed or was rejected by the full executor are left out of the
+ * suggestions.
  *
  * @author nils.hoffmann
  */
@@ -55,34 +59,33 @@ import uk.ac.ebi.pride.utilities.ols.web.service.model.Term;
 @Service
 public class OlsMappingCvSuggestionService {
 
-    private final OLSClient client;
-    private final CvParameterLookupService lookupService;
+    private final OntologyEngine ontologyEngine;
+    private final OntologyCatalog ontologyCatalog;
+    private final Executor executor;
+    private final Duration callTimeout;
+    private final Duration deadline;
     private final CvMapping cvMapping;
     private final Map<String, CvMappingRule> ruleIdLookup = new ConcurrentHashMap<>();
     private final Map<String, CvMappingRule> selectorRuleLookup = new ConcurrentHashMap<>();
-    private final Map<String, Ontology> ontologyLookup = new ConcurrentHashMap<>();
 
     @Autowired
-    public OlsMappingCvSuggestionService(OLSClient client, CvParameterLookupService lookupService) throws JAXBException, IOException {
-        this.client = client;
-        JAXBContext jaxbContext = JAXBContext.newInstance(CvMapping.class);
-        Unmarshaller u = jaxbContext.createUnmarshaller();
-        Resource res = new DefaultResourceLoader().getResource("mappings/mzTab-M-mapping.xml");
-        this.cvMapping = (CvMapping) u.unmarshal(res.getInputStream());
+    public OlsMappingCvSuggestionService(OntologyEngine ontologyEngine, OntologyCatalog ontologyCatalog, CvMappingRuleSetCache ruleSetCache,
+        @Qualifier("ontologySuggestionTaskExecutor") Executor executor,
+        @Value("${ontology.suggest.callTimeout:PT5S}") String callTimeout,
+        @Value("${ontology.suggest.deadline:PT10S}") String deadline) {
+        this.ontologyEngine = ontologyEngine;
+        this.ontologyCatalog = ontologyCatalog;
+        this.executor = executor;
+        this.callTimeout = Duration.parse(callTimeout);
+        this.deadline = Duration.parse(deadline);
+        this.cvMapping = ruleSetCache.getDefault();
         this.cvMapping.getCvMappingRuleList().getCvMappingRule().stream().forEach((cvMappingRule) -> {
             ruleIdLookup.put(cvMappingRule.getId(), cvMappingRule);
             if (selectorRuleLookup.containsKey(cvMappingRule.getCvElementPath())) {
-                throw new IllegalArgumentException("cvElementPath " + cvMappingRule.getCvElementPath() + " in mapping file " + res.getFilename() + " occurs more than once! Must be unique!");
+                throw new IllegalArgumentException("cvElementPath " + cvMappingRule.getCvElementPath() + " in mapping file " + CvMappingRuleSetCache.DEFAULT_RULE_SET_RESOURCE + " occurs more than once! Must be unique!");
             }
             selectorRuleLookup.put(cvMappingRule.getCvElementPath(), cvMappingRule);
         });
-        this.cvMapping.getCvReferenceList().getCvReference().stream().forEach((cvRef) -> {
-            Optional<Ontology> optOntology = resolveCv(cvRef.getCvIdentifier());
-            if (optOntology.isPresent()) {
-                ontologyLookup.put(cvRef.getCvIdentifier().toLowerCase(), optOntology.get());
-            }
-        });
-        this.lookupService = lookupService;
     }
 
     public Optional<CvMappingRule> getRuleForProperty(String propertyPath) {
@@ -99,6 +102,10 @@ public class OlsMappingCvSuggestionService {
         // rule selector: "/metadata/msRun/@format"
     }
 
+    public Optional<CvMappingRule> getRule(String ruleId) {
+        return Optional.ofNullable(ruleIdLookup.get(ruleId));
+    }
+
     public List<CvMappingRule> getRules() {
         return this.cvMapping.getCvMappingRuleList().getCvMappingRule();
     }
@@ -107,47 +114,50 @@ public class OlsMappingCvSuggestionService {
         return this.cvMapping.getCvReferenceList().getCvReference();
     }
 
-    public Optional<Ontology> resolveCv(String cvName) {
-        if(ontologyLookup.containsKey(cvName.toLowerCase())) {
-            return Optional.of(ontologyLookup.get(cvName.toLowerCase()));
-        } else {
-            Ontology onto = client.getOntology(cvName.toLowerCase());
-            ontologyLookup.put(cvName.toLowerCase(), onto);
-            return Optional.of(ontologyLookup.get(cvName.toLowerCase()));
-        }
+    public Optional<OntologyInfo> resolveCv(String cvName) {
+        return ontologyCatalog.get(cvName);
     }
     
-    public List<Term> suggestParameters(String partialParamName, CvMappingRule rule, int levels) {
-        return rule.getCvTerm().stream().map((cvTerm)
-                    -> {
-                CvReference ref = cvTerm.getCvIdentifierRef();
-                String cvIdentifier = ref.getCvIdentifier();
-                Identifier ident = new Identifier(cvTerm.getTermAccession(), Identifier.IdentifierType.OBO);
-                Term termIri = client.retrieveTerm(cvTerm.getTermAccession(), cvIdentifier.toLowerCase());
-                return client.getTermsByNameFromParent(partialParamName.replaceAll("[-_:]+", " ") + "*", cvIdentifier.toLowerCase(), false, termIri.getIri().getIdentifier()).stream().filter((term) -> {
-                    Parameter parentTerm = CvMappingUtils.asParameter(cvTerm);
-                    log.debug("Parent term: {}", parentTerm);
-                    Parameter childTerm = CvMappingUtils.asParameter(term);
-                    childTerm.setCvLabel(term.getOntologyName().toUpperCase());
-                    log.debug("Child term: {}", childTerm);
-                    ParameterComparisonResult result = lookupService.isChildOfOrSame(parentTerm, childTerm);
-                    log.debug("Comparison result: {}", result);
-                    switch (result) {
-                        case CHILD_OF:
-                        case IDENTICAL:
-                            return true;
-                        default:
-                            return false;
-                    }
-                }).collect(Collectors.toList());
-            }).flatMap(List::stream).filter(
-                    StreamUtils.distinctByKey((term) -> {
-                        return term.getIri();
-                    })
-            ).collect(Collectors.toList());
+    public List<Parameter> suggestParameters(String partialParamName, CvMappingRule rule, int levels) {
+        List<CvTerm> cvTerms = rule.getCvTerm();
+        List<CompletableFuture<List<Parameter>>> suggestions = new ArrayList<>(cvTerms.size());
+        for (CvTerm cvTerm : cvTerms) {
+            suggestions.add(suggestTerms(partialParamName, cvTerm).
+                orTimeout(callTimeout.toMillis(), TimeUnit.MILLISECONDS));
+        }
+        // wait for all queries, but not beyond the deadline
+        CompletableFuture.allOf(suggestions.toArray(new CompletableFuture[0])).
+            completeOnTimeout(null, deadline.toMillis(), TimeUnit.MILLISECONDS).
+            exceptionally((throwable) -> null).
+            join();
+        List<Parameter> parameters = new ArrayList<>();
+        for (int i = 0; i < cvTerms.size(); i++) {
+            CompletableFuture<List<Parameter>> suggestion = suggestions.get(i);
+            if (suggestion.isDone() && !suggestion.isCompletedExceptionally()) {
+                parameters.addAll(suggestion.join());
+            } else {
+                suggestion.cancel(false);
+                log.warn("No suggestions for term {} of rule {} within {}", cvTerms.get(i).
+                    getTermAccession(), rule.getId(), suggestion.isDone() ? callTimeout : deadline);
+            }
+        }
+        return parameters.stream().filter(
+                StreamUtils.distinctByKey((parameter) -> {
+                    return parameter.getCvAccession();
+                })
+        ).collect(Collectors.toList());
+    }
+
+    private CompletableFuture<List<Parameter>> suggestTerms(String partialParamName, CvTerm cvTerm) {
+        try {
+            return CompletableFuture.supplyAsync(()
+                -> ontologyEngine.suggestTerms(partialParamName, cvTerm), executor);
+        } catch (RejectedExecutionException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
     }
 
-    public List<Term> suggestParameters(String partialParamName, String parentRuleId, int levels) {
+    public List<Parameter> suggestParameters(String partialParamName, String parentRuleId, int levels) {
         if (ruleIdLookup.containsKey(parentRuleId)) {
             CvMappingRule rule = ruleIdLookup.get(parentRuleId);
             return suggestParameters(partialParamName, rule, levels);
@@ -18,8 +18,11 @@ package org.lifstools.mztab.validator.webapp.service.execution;
 import org.lifstools.mztab.validator.webapp.domain.ToolResult;
 import org.lifstools.mztab.validator.webapp.service.ToolResultService;
 import org.lifstools.mztab.validator.webapp.service.ValidationService;
+import org.lifstools.mztab.validator.webapp.service.storage.SessionFilesDeletedEvent;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 /**
@@ -41,6 +44,11 @@ public class DefaultToolResultService implements ToolResultService {
         return result;
     }
 
+    @Override
+    public Optional<ToolResult> getResultFor(UUID sessionId) {
+        return Optional.ofNullable(sessionToToolResultMap.get(sessionId));
+    }
+
     @Override
     public void addResultFor(UUID sessionId, ToolResult result) {
         sessionToToolResultMap.put(sessionId, result);
@@ -51,6 +59,11 @@ public class DefaultToolResultService implements ToolResultService {
         this.sessionToToolResultMap.remove(sessionId);
     }
 
+    @EventListener
+    public void onSessionFilesDeleted(SessionFilesDeletedEvent event) {
+        deleteResultFor(event.getSessionId());
+    }
+
     @Override
     public void deleteAllResults() {
         this.sessionToToolResultMap.clear();
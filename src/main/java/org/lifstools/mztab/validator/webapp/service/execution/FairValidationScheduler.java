@@ -0,0 +1,292 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.execution;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs validations on a fixed number of worker threads, choosing the next
+ * validation by client and cost instead of in arrival order.
+ *
+ * Clients, i.e. browser sessions, API keys or addresses, are served round
+ * robin, so that many queued validations of one client do not delay the
+ * validations of others. Of a client's queued validations, the one with the
+ * lowest aged cost runs first. The cost is estimated from the file size and
+ * whether semantic validation is requested, aging divides it by one plus
+ * the waiting time in multiples of the aging interval, so that large
+ * validations are not starved by a stream of small ones.
+ *
+ * Validations with a cost of at most the small cost threshold may run on
+ * any worker, larger ones are kept off the reserved workers. Small,
+ * interactive validations therefore start right away even while all other
+ * workers are busy with large ones.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Slf4j
+public class FairValidationScheduler implements Executor, MeterBinder {
+
+    public static final String DEFAULT_CLIENT = "default";
+
+    private final int threads;
+    private final int reservedThreads;
+    private final long smallCostThreshold;
+    private final double semanticCostFactor;
+    private final long agingMillis;
+    private final Clock clock;
+    // clients in round robin order, the next client to serve comes first
+    private final LinkedHashMap<String, List<Job>> queues = new LinkedHashMap<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private int queued = 0;
+    private int runningLarge = 0;
+    private int running = 0;
+    private boolean shutdown = false;
+
+    public FairValidationScheduler(int threads, int reservedThreads,
+        long smallCostThreshold, double semanticCostFactor, Duration aging) {
+        this(threads, reservedThreads, smallCostThreshold, semanticCostFactor,
+            aging, Clock.systemUTC());
+    }
+
+    public FairValidationScheduler(int threads, int reservedThreads,
+        long smallCostThreshold, double semanticCostFactor, Duration aging,
+        Clock clock) {
+        this.threads = Math.max(1, threads);
+        this.reservedThreads = Math.max(0, Math.min(reservedThreads,
+            this.threads - 1));
+        this.smallCostThreshold = smallCostThreshold;
+        this.semanticCostFactor = semanticCostFactor;
+        this.agingMillis = Math.max(1, aging.toMillis());
+        this.clock = clock;
+        for (int i = 0; i < this.threads; i++) {
+            Thread worker = new Thread(this::work, "tool-validation-" + (i + 1));
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Estimates the cost of a validation.
+     *
+     * @param bytes the size of the mzTab file.
+     * @param semantic whether semantic validation is requested.
+     * @return the estimated cost.
+     */
+    public long estimateCost(long bytes, boolean semantic) {
+        return semantic ? (long) (bytes * semanticCostFactor) : bytes;
+    }
+
+    /**
+     * Runs the command as a validation of the default client without cost.
+     *
+     * @param command the command.
+     */
+    @Override
+    public void execute(Runnable command) {
+        execute(command, DEFAULT_CLIENT, 0);
+    }
+
+    /**
+     * Queues the command.
+     *
+     * @param command the command.
+     * @param client the client that submitted the validation.
+     * @param cost the estimated cost, see
+     * {@link #estimateCost(long, boolean)}.
+     */
+    public void execute(Runnable command, String client, long cost) {
+        synchronized (queues) {
+            if (shutdown) {
+                throw new RejectedExecutionException(
+                    "Validation scheduler has been shut down");
+            }
+            queues.computeIfAbsent(client == null ? DEFAULT_CLIENT : client,
+                (c) -> new ArrayList<>()).
+                add(new Job(command, cost, clock.millis()));
+            queued++;
+            queues.notifyAll();
+        }
+    }
+
+    /**
+     * Removes a queued command.
+     *
+     * @param command the command.
+     * @return true if the command was queued and has been removed.
+     */
+    public boolean remove(Runnable command) {
+        synchronized (queues) {
+            Iterator<Map.Entry<String, List<Job>>> clients = queues.entrySet().
+                iterator();
+            while (clients.hasNext()) {
+                List<Job> jobs = clients.next().
+                    getValue();
+                if (jobs.removeIf((job) -> job.command == command)) {
+                    queued--;
+                    if (jobs.isEmpty()) {
+                        clients.remove();
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public int getQueued() {
+        synchronized (queues) {
+            return queued;
+        }
+    }
+
+    public int getRunning() {
+        synchronized (queues) {
+            return running;
+        }
+    }
+
+    /**
+     * Stops the workers, queued commands are discarded.
+     */
+    public void shutdown() {
+        synchronized (queues) {
+            shutdown = true;
+            queues.clear();
+            queued = 0;
+            queues.notifyAll();
+        }
+        workers.forEach(Thread::interrupt);
+    }
+
+    private void work() {
+        while (true) {
+            Job job;
+            synchronized (queues) {
+                try {
+                    while ((job = next()) == null) {
+                        if (shutdown) {
+                            return;
+                        }
+                        queues.wait();
+                    }
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+            try {
+                job.command.run();
+            } catch (RuntimeException ex) {
+                log.error("Validation failed with uncaught exception", ex);
+            } finally {
+                // cancelled validations interrupt their worker
+                Thread.interrupted();
+                synchronized (queues) {
+                    running--;
+                    if (!isSmall(job)) {
+                        runningLarge--;
+                    }
+                    queues.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the next job from the first client in round robin order that has
+     * a job the worker may run. Must hold the lock.
+     */
+    private Job next() {
+        if (shutdown) {
+            return null;
+        }
+        boolean largeAllowed = runningLarge < threads - reservedThreads;
+        long now = clock.millis();
+        for (Map.Entry<String, List<Job>> client : queues.entrySet()) {
+            List<Job> jobs = client.getValue();
+            Job best = null;
+            double bestCost = Double.MAX_VALUE;
+            for (Job job : jobs) {
+                if (!largeAllowed && !isSmall(job)) {
+                    continue;
+                }
+                double agedCost = job.cost / (1.0 + (double) (now - job.queuedAt)
+                    / agingMillis);
+                if (agedCost < bestCost) {
+                    best = job;
+                    bestCost = agedCost;
+                }
+            }
+            if (best != null) {
+                jobs.remove(best);
+                // the client moves to the end of the round
+                String clientId = client.getKey();
+                queues.remove(clientId);
+                if (!jobs.isEmpty()) {
+                    queues.put(clientId, jobs);
+                }
+                queued--;
+                running++;
+                if (!isSmall(best)) {
+                    runningLarge++;
+                }
+                return best;
+            }
+        }
+        return null;
+    }
+
+    private boolean isSmall(Job job) {
+        return job.cost <= smallCostThreshold;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("validation.scheduler.queued", this,
+            FairValidationScheduler::getQueued).
+            description("Number of validations waiting for a worker").
+            register(registry);
+        Gauge.builder("validation.scheduler.running", this,
+            FairValidationScheduler::getRunning).
+            description("Number of running validations").
+            register(registry);
+    }
+
+    private static final class Job {
+
+        private final Runnable command;
+        private final long cost;
+        private final long queuedAt;
+
+        Job(Runnable command, long cost, long queuedAt) {
+            this.command = command;
+            this.cost = cost;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.execution;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import lombok.extern.slf4j.Slf4j;
+import org.lifstools.mztab.validator.webapp.domain.ToolResult;
+import org.lifstools.mztab.validator.webapp.domain.ValidationProgress;
+import org.lifstools.mztab.validator.webapp.domain.ValidationStatistics;
+import org.lifstools.mztab.validator.webapp.domain.ValidationStatusUpdate;
+import org.lifstools.mztab.validator.webapp.service.ToolResultService;
+import org.lifstools.mztab.validator.webapp.service.ValidationService.Status;
+import org.lifstools.mztab.validator.webapp.service.storage.SessionFilesDeletedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Pushes the status of validations to the result pages of their sessions as
+ * server-sent events named <code>status</code>. Every subscriber receives the
+ * current status right away and every {@link ValidationStatusEvent}
+ * afterwards. While a validation is running, its stage and read progress
+ * are pushed every <code>validation.events.progressInterval</code>
+ * milliseconds. The
+ * event stream is completed after the final FINISHED,
+ * FAILED or CANCELLED status, when the session's files or its result are
+ * deleted, or after <code>validation.events.timeout</code>.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Slf4j
+@Service
+public class ValidationEventBroadcaster {
+
+    public static final String EVENT_NAME = "status";
+
+    private final ToolResultService resultService;
+    private final Duration timeout;
+    private final Map<UUID, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ValidationEventBroadcaster(ToolResultService resultService,
+        @Value("${validation.events.timeout:PT30M}") String timeout) {
+        this.resultService = resultService;
+        this.timeout = Duration.parse(timeout);
+    }
+
+    /**
+     * Opens an event stream for the session.
+     *
+     * @param sessionId the session id.
+     * @param current the current result of the session.
+     * @return the emitter to return from the controller.
+     */
+    public SseEmitter subscribe(UUID sessionId, ToolResult current) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        emitters.compute(sessionId, (id, sessionEmitters) -> {
+            List<SseEmitter> added = sessionEmitters == null ? new CopyOnWriteArrayList<>() : sessionEmitters;
+            added.add(emitter);
+            return added;
+        });
+        emitter.onCompletion(() -> remove(sessionId, emitter));
+        emitter.onTimeout(() -> remove(sessionId, emitter));
+        emitter.onError((throwable) -> remove(sessionId, emitter));
+        // registered first, a status change in between is sent twice at worst
+        send(sessionId, emitter, toUpdate(current));
+        return emitter;
+    }
+
+    @EventListener
+    public void onValidationStatus(ValidationStatusEvent event) {
+        List<SseEmitter> sessionEmitters = emitters.get(event.getSessionId());
+        if (sessionEmitters == null) {
+            return;
+        }
+        ValidationStatusUpdate update = toUpdate(event.getResult());
+        for (SseEmitter emitter : sessionEmitters) {
+            send(event.getSessionId(), emitter, update);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${validation.events.progressInterval:1000}")
+    public void pushProgress() {
+        for (Map.Entry<UUID, List<SseEmitter>> entry : emitters.entrySet()) {
+            ToolResult result = resultService.getResultFor(entry.getKey()).
+                orElse(null);
+            if (result == null) {
+                // the session's result was dropped, nothing will follow
+                List<SseEmitter> sessionEmitters = emitters.remove(entry.
+                    getKey());
+                if (sessionEmitters != null) {
+                    sessionEmitters.forEach(SseEmitter::complete);
+                }
+                continue;
+            }
+            if (result.getStatus() != Status.RUNNING || result.
+                getValidationProgress() == null) {
+                continue;
+            }
+            ValidationStatusUpdate update = toUpdate(result);
+            for (SseEmitter emitter : entry.getValue()) {
+                send(entry.getKey(), emitter, update);
+            }
+        }
+    }
+
+    @EventListener
+    public void onSessionFilesDeleted(SessionFilesDeletedEvent event) {
+        List<SseEmitter> sessionEmitters = emitters.remove(event.getSessionId());
+        if (sessionEmitters != null) {
+            sessionEmitters.forEach(SseEmitter::complete);
+        }
+    }
+
+    /**
+     * Returns the approximate progress of a validation in percent. While the
+     * validation is running, its stage and the share of the file that has
+     * been read advance the progress from 25 to 75 percent.
+     *
+     * @param result the result of the validation.
+     * @return the progress, 0 for FAILED or not started validations.
+     */
+    public static int progressOf(ToolResult result) {
+        switch (result.getStatus()) {
+            case PREPARING:
+                return 10;
+            case STARTED:
+                return 25;
+            case RUNNING:
+                ValidationProgress validationProgress = result.getValidationProgress();
+                return validationProgress == null ? 50 : 25 + (int) Math.round(
+                    50 * validationProgress.getFraction());
+            case FINISHED:
+                return 100;
+            default:
+                return 0;
+        }
+    }
+
+    private static ValidationStatusUpdate toUpdate(ToolResult result) {
+        ValidationStatusUpdate update = new ValidationStatusUpdate();
+        update.setStatus(result.getStatus());
+        update.setProgress(progressOf(result));
+        ValidationProgress validationProgress = result.getValidationProgress();
+        if (validationProgress != null && !update.isDone()) {
+            update.setStage(validationProgress.getStage());
+            update.setStageDescription(validationProgress.getStage().
+                getDescription());
+            update.setBytesRead(validationProgress.getBytesRead());
+            update.setBytesTotal(validationProgress.getBytesTotal());
+            update.setLinesRead(validationProgress.getLinesRead());
+            update.setSection(validationProgress.getSection());
+        }
+        if (result.getException() != null) {
+            update.setMessage(result.getException().
+                getMessage());
+        }
+        if (update.isDone() && result.getResultView() != null) {
+            ValidationStatistics statistics = result.getResultView().
+                getValidationStatistics();
+            update.setErrors(statistics.getErrors());
+            update.setWarnings(statistics.getWarnings());
+            update.setInfos(statistics.getInfos());
+        }
+        return update;
+    }
+
+    private void send(UUID sessionId, SseEmitter emitter,
+        ValidationStatusUpdate update) {
+        try {
+            emitter.send(SseEmitter.event().
+                name(EVENT_NAME).
+                data(update, MediaType.APPLICATION_JSON));
+            if (update.isDone()) {
+                emitter.complete();
+            }
+        } catch (IOException | IllegalStateException ex) {
+            // the client has gone away
+            log.debug("Could not send status of session {}: {}", sessionId, ex.
+                getMessage());
+            remove(sessionId, emitter);
+        }
+    }
+
+    private void remove(UUID sessionId, SseEmitter emitter) {
+        emitters.computeIfPresent(sessionId, (id, sessionEmitters) -> {
+            sessionEmitters.remove(emitter);
+            return sessionEmitters.isEmpty() ? null : sessionEmitters;
+        });
+    }
+}
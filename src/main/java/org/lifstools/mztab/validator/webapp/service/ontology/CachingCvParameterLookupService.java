@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.ontology;
+
+import org.lifstools.mztab2.cvmapping.CvParameterLookupService;
+import org.lifstools.mztab2.cvmapping.ParameterComparisonResult;
+import org.lifstools.mztab2.model.Parameter;
+
+/**
+ * A {@link CvParameterLookupService} that consults the
+ * {@link OntologyResponseCache} before asking the delegate lookup service.
+ * If the delegate is unavailable, expired cached answers are used.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+public class CachingCvParameterLookupService extends CvParameterLookupService {
+
+    private final CvParameterLookupService delegate;
+    private final OntologyResponseCache cache;
+
+    public CachingCvParameterLookupService(CvParameterLookupService delegate,
+        OntologyResponseCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public ParameterComparisonResult isChildOfOrSame(Parameter parent,
+        Parameter child) {
+        if (parent == null || child == null || parent.getCvAccession() == null || child.
+            getCvAccession() == null) {
+            return delegate.isChildOfOrSame(parent, child);
+        }
+        String key = "isChildOfOrSame\t" + parent.getCvLabel() + "\t" + parent.
+            getCvAccession() + "\t" + child.getCvLabel() + "\t" + child.
+            getCvAccession();
+        return cache.get(key, () ->
+            delegate.isChildOfOrSame(parent, child),
+            ParameterComparisonResult::name,
+            ParameterComparisonResult::valueOf);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.ontology;
+
+import java.util.function.Supplier;
+import org.lifstools.mztab2.cvmapping.CvParameterLookupService;
+import org.lifstools.mztab2.cvmapping.ParameterComparisonResult;
+import org.lifstools.mztab2.model.Parameter;
+
+/**
+ * A {@link CvParameterLookupService} that answers from the ancestor closure
+ * of the current {@link OboOntologyStore}. Checks involving terms that are
+ * not in the store are passed to the fallback lookup service, if there is
+ * one, otherwise the terms are considered unrelated.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+public class OboCvParameterLookupService extends CvParameterLookupService {
+
+    private final Supplier<OboOntologyStore> store;
+    private final CvParameterLookupService fallback;
+
+    public OboCvParameterLookupService(Supplier<OboOntologyStore> store) {
+        this(store, null);
+    }
+
+    public OboCvParameterLookupService(Supplier<OboOntologyStore> store,
+        CvParameterLookupService fallback) {
+        this.store = store;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public ParameterComparisonResult isChildOfOrSame(Parameter parent,
+        Parameter child) {
+        if (parent == null || child == null || parent.getCvAccession() == null || child.
+            getCvAccession() == null) {
+            return fallback == null ? ParameterComparisonResult.NOT_RELATED : fallback.
+                isChildOfOrSame(parent, child);
+        }
+        if (parent.getCvAccession().
+            equalsIgnoreCase(child.getCvAccession())) {
+            return ParameterComparisonResult.IDENTICAL;
+        }
+        OboOntologyStore terms = store.get();
+        int parentIndex = terms.indexOf(parent.getCvAccession());
+        int childIndex = terms.indexOf(child.getCvAccession());
+        if (parentIndex < 0 || childIndex < 0) {
+            if (fallback != null) {
+                return fallback.isChildOfOrSame(parent, child);
+            }
+            return ParameterComparisonResult.NOT_RELATED;
+        }
+        return terms.isAncestorOf(parentIndex, childIndex) ? ParameterComparisonResult.CHILD_OF : ParameterComparisonResult.NOT_RELATED;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.ontology;
+
+import info.psidev.cvmapping.CvTerm;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.lifstools.mztab2.cvmapping.CvParameterLookupService;
+import org.lifstools.mztab2.model.Parameter;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * An {@link OntologyEngine} backed by OBO snapshot files, e.g.
+ * <code>psi-ms.obo</code> or <code>uo.obo.gz</code>, in a local directory.
+ * The directory is checked periodically and reloaded when files were added,
+ * removed or modified. Validations that are running keep the store they
+ * started with.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Slf4j
+public class OboOntologyEngine implements OntologyEngine {
+
+    private static final int MAX_SUGGESTIONS = 100;
+
+    private final Path directory;
+    private final OboCvParameterLookupService lookupService;
+    private volatile OboOntologyStore store = OboOntologyStore.EMPTY;
+    private volatile String loadedFingerprint;
+
+    public OboOntologyEngine(Path directory) {
+        this.directory = directory;
+        this.lookupService = new OboCvParameterLookupService(this::getStore);
+        reloadIfChanged();
+    }
+
+    public OboOntologyStore getStore() {
+        return store;
+    }
+
+    @Override
+    public CvParameterLookupService getLookupService() {
+        return lookupService;
+    }
+
+    @Override
+    public Optional<OntologyInfo> getOntology(String cvIdentifier) {
+        return store.getOntology(cvIdentifier);
+    }
+
+    @Override
+    public List<Parameter> suggestTerms(String partialName, CvTerm cvTerm) {
+        OboOntologyStore terms = store;
+        int root = terms.indexOf(cvTerm.getTermAccession());
+        if (root < 0) {
+            return Collections.emptyList();
+        }
+        return terms.findDescendantsByLabel(root, partialName.replaceAll(
+            "[-_:]+", " "), MAX_SUGGESTIONS).
+            stream().
+            filter((term) -> term != root || cvTerm.isUseTerm()).
+            filter((term) -> term == root || cvTerm.isAllowChildren()).
+            map((term) -> toParameter(terms, term)).
+            collect(Collectors.toList());
+    }
+
+    @Override
+    public TermDescendants getDescendants(String cvIdentifier,
+        String accession, int maxDepth) {
+        OboOntologyStore terms = store;
+        int root = terms.indexOf(accession);
+        if (root < 0) {
+            return new TermDescendants(Collections.emptySet(), false);
+        }
+        return terms.getDescendants(root, maxDepth);
+    }
+
+    @Override
+    public Optional<TermInfo> resolveTerm(String cvIdentifier,
+        String accession) {
+        OboOntologyStore terms = store;
+        int term = terms.indexOf(accession);
+        return term < 0 ? Optional.empty() : Optional.of(terms.getTermInfo(term));
+    }
+
+    @Override
+    public List<Parameter> getDescendantTerms(String cvIdentifier,
+        String accession, int maxDepth) {
+        OboOntologyStore terms = store;
+        int root = terms.indexOf(accession);
+        if (root < 0) {
+            return Collections.emptyList();
+        }
+        return terms.getDescendants(root, maxDepth).
+            getAccessions().
+            stream().
+            map(terms::indexOf).
+            filter((term) -> !terms.isObsolete(term)).
+            map((term) -> toParameter(terms, term)).
+            collect(Collectors.toList());
+    }
+
+    /**
+     * Reloads the snapshot directory, if its content changed since the last
+     * load.
+     *
+     * @return true if the store was reloaded.
+     */
+    @Scheduled(fixedDelayString = "${ontology.snapshot.reloadInterval:60000}")
+    public synchronized boolean reloadIfChanged() {
+        try {
+            List<Path> files = listSnapshotFiles();
+            String fingerprint = fingerprint(files);
+            if (fingerprint.equals(loadedFingerprint)) {
+                return false;
+            }
+            OboOntologyStore.Builder builder = new OboOntologyStore.Builder();
+            OboParser parser = new OboParser();
+            for (Path file : files) {
+                try (BufferedReader reader = open(file)) {
+                    OntologyInfo ontology = parser.parse(reader,
+                        ontologyId(file), builder);
+                    log.info("Loaded ontology {} version {} from {}", ontology.
+                        getId(), ontology.getVersion(), file);
+                }
+            }
+            store = builder.build();
+            loadedFingerprint = fingerprint;
+            log.info("Loaded {} terms of {} ontologies from {}", store.size(),
+                store.getOntologies().
+                    size(), directory);
+            return true;
+        } catch (IOException | RuntimeException ex) {
+            log.error("Could not load ontology snapshots from " + directory
+                + ", keeping the previous snapshot", ex);
+            return false;
+        }
+    }
+
+    private List<Path> listSnapshotFiles() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            log.warn("Ontology snapshot directory {} does not exist", directory);
+            return Collections.emptyList();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter((file) ->
+                file.getFileName().
+                    toString().
+                    endsWith(".obo") || file.getFileName().
+                    toString().
+                    endsWith(".obo.gz")).
+                sorted().
+                collect(Collectors.toList());
+        }
+    }
+
+    private static String fingerprint(List<Path> files) throws IOException {
+        List<String> parts = new ArrayList<>(files.size());
+        for (Path file : files) {
+            parts.add(file.getFileName() + ":" + Files.size(file) + ":" + Files.
+                getLastModifiedTime(file).
+                toMillis());
+        }
+        return String.join("|", parts);
+    }
+
+    private static BufferedReader open(Path file) throws IOException {
+        InputStream is = Files.newInputStream(file);
+        if (file.getFileName().
+            toString().
+            endsWith(".gz")) {
+            is = new GZIPInputStream(is);
+        }
+        return new BufferedReader(new InputStreamReader(is,
+            StandardCharsets.UTF_8));
+    }
+
+    private static String ontologyId(Path file) {
+        String name = file.getFileName().
+            toString();
+        return name.substring(0, name.indexOf(".obo"));
+    }
+
+    private static Parameter toParameter(OboOntologyStore terms, int term) {
+        String accession = terms.getAccession(term);
+        return new Parameter().
+            cvLabel(accession.substring(0, Math.max(0, accession.indexOf(':')))).
+            cvAccession(accession).
+            name(terms.getLabel(term));
+    }
+}
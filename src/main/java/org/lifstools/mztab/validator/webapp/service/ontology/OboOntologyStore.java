@@ -0,0 +1,415 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.ontology;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable, in-memory store of ontology terms. Terms are addressed by an
+ * int index, labels are interned and the <code>is_a</code> relations are
+ * kept as int arrays of parent and child indices.
+ *
+ * The transitive closure of the <code>is_a</code> relation is kept as an
+ * interval labelling: terms are numbered in depth first post order and each
+ * term stores the ranges of numbers of its descendants. Terms of a tree only
+ * need the range of their own subtree, so {@link #isAncestorOf(int, int)} is
+ * a range check. Only terms that reach other subtrees through additional
+ * parents keep further, sorted ranges. Ancestors that are only reachable
+ * across an <code>is_a</code> cycle are not recorded.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+public final class OboOntologyStore {
+
+    public static final OboOntologyStore EMPTY = new Builder().build();
+
+    private final Map<String, OntologyInfo> ontologies;
+    private final Map<String, Integer> termIndex;
+    private final String[] accessions;
+    private final String[] labels;
+    private final int[][] parents;
+    private final int[][] children;
+    private final int[] order;
+    private final int[] lows;
+    private final int[][] ranges;
+    private final BitSet obsolete;
+
+    private OboOntologyStore(Map<String, OntologyInfo> ontologies,
+        Map<String, Integer> termIndex, String[] accessions, String[] labels,
+        int[][] parents, int[][] children, int[] order, int[] lows,
+        int[][] ranges, BitSet obsolete) {
+        this.ontologies = ontologies;
+        this.termIndex = termIndex;
+        this.accessions = accessions;
+        this.labels = labels;
+        this.parents = parents;
+        this.children = children;
+        this.order = order;
+        this.lows = lows;
+        this.ranges = ranges;
+        this.obsolete = obsolete;
+    }
+
+    public int size() {
+        return accessions.length;
+    }
+
+    public Collection<OntologyInfo> getOntologies() {
+        return Collections.unmodifiableCollection(ontologies.values());
+    }
+
+    public Optional<OntologyInfo> getOntology(String id) {
+        return Optional.ofNullable(ontologies.get(id.toLowerCase(Locale.ROOT)));
+    }
+
+    /**
+     * Returns the index of the term.
+     *
+     * @param accession the term accession, e.g. MS:1000031.
+     * @return the term index, or -1 if the term is unknown.
+     */
+    public int indexOf(String accession) {
+        if (accession == null) {
+            return -1;
+        }
+        Integer index = termIndex.get(accession.toUpperCase(Locale.ROOT));
+        return index == null ? -1 : index;
+    }
+
+    public String getAccession(int term) {
+        return accessions[term];
+    }
+
+    public String getLabel(int term) {
+        return labels[term];
+    }
+
+    public boolean isObsolete(int term) {
+        return obsolete.get(term);
+    }
+
+    public int[] getParents(int term) {
+        return parents[term].clone();
+    }
+
+    public TermInfo getTermInfo(int term) {
+        List<String> parentAccessions = new ArrayList<>(parents[term].length);
+        for (int parent : parents[term]) {
+            parentAccessions.add(accessions[parent]);
+        }
+        return new TermInfo(accessions[term], labels[term], obsolete.get(term),
+            parentAccessions);
+    }
+
+    public int[] getChildren(int term) {
+        return children[term].clone();
+    }
+
+    /**
+     * Returns true, if the ancestor is reachable from the term via
+     * <code>is_a</code> relations.
+     *
+     * @param ancestor the index of the potential ancestor.
+     * @param term the index of the term.
+     * @return true if ancestor is a proper ancestor of term.
+     */
+    public boolean isAncestorOf(int ancestor, int term) {
+        if (ancestor == term) {
+            return false;
+        }
+        int position = order[term];
+        if (position >= lows[ancestor] && position <= order[ancestor]) {
+            return true;
+        }
+        int[] more = ranges[ancestor];
+        if (more == null) {
+            return false;
+        }
+        int low = 0;
+        int high = more.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (more[2 * mid + 1] < position) {
+                low = mid + 1;
+            } else if (more[2 * mid] > position) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the accessions of the terms below the root term.
+     *
+     * @param root the index of the root term.
+     * @param maxDepth the maximum number of is_a levels to descend.
+     * @return the descendants, complete unless terms below maxDepth exist.
+     */
+    public TermDescendants getDescendants(int root, int maxDepth) {
+        Set<String> descendants = new HashSet<>();
+        BitSet visited = new BitSet(accessions.length);
+        visited.set(root);
+        int[] level = children[root];
+        boolean complete = true;
+        for (int depth = 1; level.length > 0; depth++) {
+            if (depth > maxDepth) {
+                complete = false;
+                break;
+            }
+            IntStream.Builder next = IntStream.builder();
+            for (int term : level) {
+                if (!visited.get(term)) {
+                    visited.set(term);
+                    descendants.add(accessions[term]);
+                    for (int child : children[term]) {
+                        next.add(child);
+                    }
+                }
+            }
+            level = next.build().
+                toArray();
+        }
+        return new TermDescendants(descendants, complete);
+    }
+
+    /**
+     * Returns the non-obsolete terms below and including the root term whose
+     * label contains the query, ignoring case, in breadth first order.
+     *
+     * @param root the index of the root term.
+     * @param query the partial label.
+     * @param maxResults the maximum number of terms to return.
+     * @return the indices of the matching terms.
+     */
+    public List<Integer> findDescendantsByLabel(int root, String query,
+        int maxResults) {
+        String needle = query.toLowerCase(Locale.ROOT);
+        List<Integer> matches = new ArrayList<>();
+        BitSet visited = new BitSet(accessions.length);
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(root);
+        visited.set(root);
+        while (!queue.isEmpty() && matches.size() < maxResults) {
+            int term = queue.poll();
+            if (!obsolete.get(term) && labels[term] != null && labels[term].
+                toLowerCase(Locale.ROOT).
+                contains(needle)) {
+                matches.add(term);
+            }
+            for (int child : children[term]) {
+                if (!visited.get(child)) {
+                    visited.set(child);
+                    queue.add(child);
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Collects terms and ontologies. Relations may refer to terms that are
+     * added later, references to terms that are never added are dropped.
+     * Not thread safe.
+     */
+    public static class Builder {
+
+        private final Map<String, OntologyInfo> ontologies = new LinkedHashMap<>();
+        private final Map<String, Integer> termIndex = new HashMap<>();
+        private final Map<String, String> internedLabels = new HashMap<>();
+        private final List<String> accessions = new ArrayList<>();
+        private final List<String> labels = new ArrayList<>();
+        private final List<List<String>> parentAccessions = new ArrayList<>();
+        private final BitSet obsolete = new BitSet();
+
+        public Builder addOntology(OntologyInfo ontology) {
+            ontologies.putIfAbsent(ontology.getId().
+                toLowerCase(Locale.ROOT), ontology);
+            return this;
+        }
+
+        /**
+         * Adds a term. Repeated terms keep their first label, their parents
+         * are merged.
+         *
+         * @param accession the term accession.
+         * @param label the term label.
+         * @param isObsolete whether the term is obsolete.
+         * @param isA the accessions of the parent terms.
+         * @return this builder.
+         */
+        public Builder addTerm(String accession, String label,
+            boolean isObsolete, List<String> isA) {
+            String key = accession.toUpperCase(Locale.ROOT);
+            Integer index = termIndex.get(key);
+            if (index == null) {
+                index = accessions.size();
+                termIndex.put(key, index);
+                accessions.add(accession);
+                labels.add(label == null ? null : internedLabels.
+                    computeIfAbsent(label, (l) -> l));
+                parentAccessions.add(new ArrayList<>(isA));
+            } else {
+                parentAccessions.get(index).
+                    addAll(isA);
+            }
+            if (isObsolete) {
+                obsolete.set(index);
+            }
+            return this;
+        }
+
+        public OboOntologyStore build() {
+            int size = accessions.size();
+            int[][] parents = new int[size][];
+            int[] childCounts = new int[size];
+            for (int i = 0; i < size; i++) {
+                parents[i] = parentAccessions.get(i).
+                    stream().
+                    map((accession) ->
+                        termIndex.get(accession.toUpperCase(Locale.ROOT))).
+                    filter((parent) -> parent != null).
+                    mapToInt(Integer::intValue).
+                    distinct().
+                    toArray();
+                for (int parent : parents[i]) {
+                    childCounts[parent]++;
+                }
+            }
+            int[][] children = new int[size][];
+            for (int i = 0; i < size; i++) {
+                children[i] = new int[childCounts[i]];
+                childCounts[i] = 0;
+            }
+            for (int i = 0; i < size; i++) {
+                for (int parent : parents[i]) {
+                    children[parent][childCounts[parent]++] = i;
+                }
+            }
+            int[] order = new int[size];
+            int[] lows = new int[size];
+            int[][] ranges = intervalLabels(parents, children, order, lows);
+            return new OboOntologyStore(new LinkedHashMap<>(ontologies),
+                new HashMap<>(termIndex), accessions.toArray(new String[size]),
+                labels.toArray(new String[size]), parents, children, order,
+                lows, ranges, (BitSet) obsolete.clone());
+        }
+
+        /**
+         * Numbers the terms in depth first post order, starting at the root
+         * terms, and computes the ranges of numbers of their descendants.
+         * Each term is finished after all terms below it, except for terms
+         * on an <code>is_a</code> cycle, whose child on the cycle is skipped.
+         * The range of a term that ends with its own number is returned in
+         * lows, all other ranges as pairs of lower and upper bounds, or null
+         * if there are none.
+         */
+        private static int[][] intervalLabels(int[][] parents,
+            int[][] children, int[] order, int[] lows) {
+            int size = parents.length;
+            int[][] intervals = new int[size][];
+            int[] nextChild = new int[size];
+            int[] stack = new int[size];
+            BitSet entered = new BitSet(size);
+            int counter = 0;
+            for (int pass = 0; pass < 2; pass++) {
+                for (int start = 0; start < size; start++) {
+                    // roots first, then terms only reachable on a cycle
+                    if (entered.get(start) || (pass == 0
+                        && parents[start].length > 0)) {
+                        continue;
+                    }
+                    int depth = 0;
+                    stack[depth++] = start;
+                    entered.set(start);
+                    lows[start] = counter;
+                    while (depth > 0) {
+                        int term = stack[depth - 1];
+                        if (nextChild[term] < children[term].length) {
+                            int child = children[term][nextChild[term]++];
+                            if (!entered.get(child)) {
+                                entered.set(child);
+                                lows[child] = counter;
+                                stack[depth++] = child;
+                            }
+                        } else {
+                            depth--;
+                            order[term] = counter++;
+                            intervals[term] = merge(lows[term], order[term],
+                                children[term], intervals);
+                        }
+                    }
+                }
+            }
+            int[][] ranges = new int[size][];
+            for (int i = 0; i < size; i++) {
+                int[] merged = intervals[i];
+                lows[i] = merged[merged.length - 2];
+                ranges[i] = merged.length == 2 ? null : Arrays.copyOf(merged,
+                    merged.length - 2);
+            }
+            return ranges;
+        }
+
+        /**
+         * Merges the range of the subtree of a term with the ranges of its
+         * finished children into sorted, disjoint pairs of bounds.
+         */
+        private static int[] merge(int low, int high, int[] children,
+            int[][] intervals) {
+            List<int[]> pairs = new ArrayList<>();
+            pairs.add(new int[]{low, high});
+            for (int child : children) {
+                int[] childIntervals = intervals[child];
+                if (childIntervals == null) {
+                    continue;
+                }
+                for (int i = 0; i < childIntervals.length; i += 2) {
+                    pairs.add(new int[]{childIntervals[i], childIntervals[i
+                        + 1]});
+                }
+            }
+            pairs.sort((a, b) -> Integer.compare(a[0], b[0]));
+            int[] merged = new int[pairs.size() * 2];
+            int length = 0;
+            for (int[] pair : pairs) {
+                if (length > 0 && pair[0] <= merged[length - 1] + 1) {
+                    merged[length - 1] = Math.max(merged[length - 1], pair[1]);
+                } else {
+                    merged[length++] = pair[0];
+                    merged[length++] = pair[1];
+                }
+            }
+            return Arrays.copyOf(merged, length);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.ontology;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads ontologies in the OBO 1.2/1.4 flat file format. Only the header and
+ * the <code>id</code>, <code>name</code>, <code>is_a</code> and
+ * <code>is_obsolete</code> tags of <code>[Term]</code> stanzas are used,
+ * other stanzas and tags are skipped.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+public class OboParser {
+
+    private static final Pattern TITLE = Pattern.compile(
+        "^\\S*title\\s+\"(.*)\".*$");
+
+    /**
+     * Adds the ontology and its terms to the builder.
+     *
+     * @param reader the OBO content.
+     * @param defaultId the ontology id to use, if the header does not
+     * declare one, e.g. derived from the file name.
+     * @param builder the store builder.
+     * @return the ontology metadata.
+     * @throws IOException if the content can not be read.
+     */
+    public OntologyInfo parse(BufferedReader reader, String defaultId,
+        OboOntologyStore.Builder builder) throws IOException {
+        String id = null;
+        String title = null;
+        String version = null;
+        String stanza = null;
+        String termId = null;
+        String termName = null;
+        boolean termObsolete = false;
+        List<String> isA = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("!")) {
+                continue;
+            }
+            if (line.startsWith("[")) {
+                if (termId != null) {
+                    builder.addTerm(termId, termName, termObsolete, isA);
+                }
+                stanza = line;
+                termId = null;
+                termName = null;
+                termObsolete = false;
+                isA = new ArrayList<>();
+                continue;
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String tag = line.substring(0, colon);
+            String value = stripComment(line.substring(colon + 1).
+                trim());
+            if (stanza == null) {
+                switch (tag) {
+                    case "ontology":
+                        id = value;
+                        break;
+                    case "data-version":
+                        version = value;
+                        break;
+                    case "property_value":
+                        Matcher m = TITLE.matcher(value);
+                        if (m.matches()) {
+                            title = m.group(1);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            } else if ("[Term]".equals(stanza)) {
+                switch (tag) {
+                    case "id":
+                        termId = value;
+                        break;
+                    case "name":
+                        termName = value;
+                        break;
+                    case "is_a":
+                        isA.add(value);
+                        break;
+                    case "is_obsolete":
+                        termObsolete = Boolean.parseBoolean(value);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        if (termId != null) {
+            builder.addTerm(termId, termName, termObsolete, isA);
+        }
+        id = id == null ? defaultId : id;
+        OntologyInfo ontology = new OntologyInfo(id.toLowerCase(Locale.ROOT),
+            title == null ? id.toUpperCase(Locale.ROOT) : title, version);
+        builder.addOntology(ontology);
+        return ontology;
+    }
+
+    /**
+     * Removes trailing comments (<code>! ...</code>) and modifiers
+     * (<code>{...}</code>) from a tag value.
+     */
+    private static String stripComment(String value) {
+        if (value.startsWith("\"")) {
+            // quoted values, e.g. def, may contain '!'
+            return value;
+        }
+        int end = value.length();
+        int comment = value.indexOf(" !");
+        if (comment >= 0) {
+            end = comment;
+        }
+        int modifier = value.indexOf(" {");
+        if (modifier >= 0 && modifier < end) {
+            end = modifier;
+        }
+        return value.substring(0, end).
+            trim();
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.ontology;
+
+import info.psidev.cvmapping.CvTerm;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.lifstools.mztab2.cvmapping.CvMappingUtils;
+import org.lifstools.mztab2.cvmapping.CvParameterLookupService;
+import org.lifstools.mztab2.cvmapping.ParameterComparisonResult;
+import org.lifstools.mztab2.model.Parameter;
+import uk.ac.ebi.pride.utilities.ols.web.service.client.OLSClient;
+import uk.ac.ebi.pride.utilities.ols.web.service.model.Identifier;
+import uk.ac.ebi.pride.utilities.ols.web.service.model.Ontology;
+import uk.ac.ebi.pride.utilities.ols.web.service.model.Term;
+
+/**
+ * An {@link OntologyEngine} backed by the remote Ontology Lookup Service.
+ * Every call to the service goes through the circuit breaker of the
+ * {@link ResilientCvParameterLookupService}, calls returning the descendants
+ * of a term are given the longer bulk timeout.
+ *
+ * Terms are resolved from the local OBO snapshot if possible, otherwise
+ * through the {@link OntologyResponseCache}, which also keeps the IRIs of
+ * the parent terms of suggestions. Ontology metadata and descendants are not
+ * cached here, the {@link OntologyCatalog} and the callers keep them along
+ * with the ontology version, so that a new version is noticed.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Slf4j
+public class OlsOntologyEngine implements OntologyEngine {
+
+    private final OLSClient client;
+    private final CvParameterLookupService lookupService;
+    private final Supplier<OboOntologyStore> snapshot;
+    private final OntologyResponseCache cache;
+    private final ResilientCvParameterLookupService remote;
+    private final Duration bulkTimeout;
+
+    public OlsOntologyEngine(OLSClient client,
+        CvParameterLookupService lookupService,
+        Supplier<OboOntologyStore> snapshot, OntologyResponseCache cache,
+        ResilientCvParameterLookupService remote, Duration bulkTimeout) {
+        this.client = client;
+        this.lookupService = lookupService;
+        this.snapshot = snapshot;
+        this.cache = cache;
+        this.remote = remote;
+        this.bulkTimeout = bulkTimeout;
+    }
+
+    @Override
+    public CvParameterLookupService getLookupService() {
+        return lookupService;
+    }
+
+    @Override
+    public Optional<OntologyInfo> getOntology(String cvIdentifier) {
+        String id = cvIdentifier.toLowerCase();
+        Ontology ontology = remote.call(() -> client.getOntology(id));
+        if (ontology == null) {
+            log.warn("Could not retrieve ontology {} from OLS", id);
+            return Optional.empty();
+        }
+        return Optional.of(new OntologyInfo(id,
+            ontology.getDescription() == null ? ontology.getNamespace() : ontology.
+            getDescription(),
+            ontology.getConfig() == null ? null : ontology.getConfig().
+            getVersion()));
+    }
+
+    @Override
+    public List<Parameter> suggestTerms(String partialName, CvTerm cvTerm) {
+        String cvIdentifier = cvTerm.getCvIdentifierRef().
+            getCvIdentifier().
+            toLowerCase();
+        String accession = cvTerm.getTermAccession();
+        String parentIri = cache.get("termIri\t" + cvIdentifier + "\t"
+            + accession, () -> remote.call(() -> {
+                Term parent = client.retrieveTerm(accession, cvIdentifier);
+                return parent == null || parent.getIri() == null ? null : parent.
+                    getIri().
+                    getIdentifier();
+            }), Function.identity(), Function.identity());
+        if (parentIri == null) {
+            return Collections.emptyList();
+        }
+        Parameter parentTerm = CvMappingUtils.asParameter(cvTerm);
+        log.debug("Parent term: {}", parentTerm);
+        List<Term> terms = remote.call(() -> client.getTermsByNameFromParent(
+            partialName.replaceAll("[-_:]+", " ") + "*", cvIdentifier, false,
+            parentIri));
+        if (terms == null) {
+            return Collections.emptyList();
+        }
+        return terms.stream().
+            map((term) ->
+            {
+                Parameter childTerm = CvMappingUtils.asParameter(term);
+                childTerm.setCvLabel(term.getOntologyName().
+                    toUpperCase());
+                return childTerm;
+            }).
+            filter((childTerm) ->
+            {
+                log.debug("Child term: {}", childTerm);
+                ParameterComparisonResult result = lookupService.
+                    isChildOfOrSame(parentTerm, childTerm);
+                log.debug("Comparison result: {}", result);
+                switch (result) {
+                    case CHILD_OF:
+                    case IDENTICAL:
+                        return true;
+                    default:
+                        return false;
+                }
+            }).
+            collect(Collectors.toList());
+    }
+
+    @Override
+    public TermDescendants getDescendants(String cvIdentifier,
+        String accession, int maxDepth) {
+        List<Term> children = children(cvIdentifier, accession, maxDepth);
+        if (children == null) {
+            return new TermDescendants(Collections.emptySet(), false);
+        }
+        // OLS does not tell whether terms beyond maxDepth exist
+        return new TermDescendants(children.stream().
+            filter((term) -> term.getOboId() != null).
+            map((term) -> term.getOboId().
+                getIdentifier()).
+            collect(Collectors.toSet()), false);
+    }
+
+    @Override
+    public List<Parameter> getDescendantTerms(String cvIdentifier,
+        String accession, int maxDepth) {
+        List<Term> children = children(cvIdentifier, accession, maxDepth);
+        if (children == null) {
+            return Collections.emptyList();
+        }
+        return children.stream().
+            filter((term) -> term.getOboId() != null && !term.isObsolete()).
+            map((term) ->
+            {
+                Parameter childTerm = CvMappingUtils.asParameter(term);
+                childTerm.setCvLabel(cvIdentifier.toUpperCase());
+                return childTerm;
+            }).
+            collect(Collectors.toList());
+    }
+
+    private List<Term> children(String cvIdentifier, String accession,
+        int maxDepth) {
+        return remote.call(() -> client.getTermChildren(new Identifier(
+            accession, Identifier.IdentifierType.OBO), cvIdentifier.
+            toLowerCase(), maxDepth), bulkTimeout);
+    }
+
+    @Override
+    public Optional<TermInfo> resolveTerm(String cvIdentifier,
+        String accession) {
+        OboOntologyStore terms = snapshot.get();
+        int term = terms.indexOf(accession);
+        if (term >= 0) {
+            return Optional.of(terms.getTermInfo(term));
+        }
+        String ontologyId = cvIdentifier.toLowerCase();
+        return Optional.ofNullable(cache.get("resolveTerm\t" + ontologyId
+            + "\t" + accession, () -> remote.call(() ->
+            retrieveTerm(ontologyId, accession)), TermInfo::encode,
+            TermInfo::decode));
+    }
+
+    private TermInfo retrieveTerm(String ontologyId, String accession) {
+        Term term = client.retrieveTerm(accession, ontologyId);
+        if (term == null) {
+            return null;
+        }
+        List<Term> parents = client.getTermParents(new Identifier(accession,
+            Identifier.IdentifierType.OBO), ontologyId, 1);
+        return new TermInfo(accession, term.getLabel(), term.isObsolete(),
+            parents == null ? Collections.emptyList() : parents.stream().
+                filter((parent) -> parent.getOboId() != null).
+                map((parent) -> parent.getOboId().
+                    getIdentifier()).
+                collect(Collectors.toList()));
+    }
+}
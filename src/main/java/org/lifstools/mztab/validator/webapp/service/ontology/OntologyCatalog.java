@@ -0,0 +1,224 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.ontology;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import info.psidev.cvmapping.CvReference;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.lifstools.mztab.validator.webapp.service.storage.AtomicFiles;
+import org.lifstools.mztab.validator.webapp.service.validation.CvMappingRuleSetCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Holds the metadata of the ontologies referenced by the default CvMapping
+ * rule set. The metadata is read from a local snapshot file at startup. Once
+ * the application is ready, all ontologies are retrieved in parallel from the
+ * {@link OntologyEngine} in the background, merged into the catalog and
+ * written back to the snapshot. The retrieval is repeated every
+ * <code>ontology.catalog.refreshInterval</code> milliseconds.
+ *
+ * As a health indicator, the catalog reports UP once a snapshot was loaded or
+ * the first retrieval has finished, and OUT_OF_SERVICE before. It is part of
+ * the readiness health group.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Slf4j
+@Service
+public class OntologyCatalog implements HealthIndicator {
+
+    private final OntologyEngine ontologyEngine;
+    private final CvMappingRuleSetCache ruleSetCache;
+    private final Executor executor;
+    private final ObjectMapper objectMapper;
+    private final Path file;
+    private final Duration timeout;
+    private final Map<String, OntologyInfo> ontologies = new ConcurrentHashMap<>();
+    private final AtomicBoolean available = new AtomicBoolean();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile String versions = "";
+
+    @Autowired
+    public OntologyCatalog(OntologyEngine ontologyEngine,
+        CvMappingRuleSetCache ruleSetCache,
+        @Qualifier("ontologyLookupTaskExecutor") Executor executor,
+        ObjectMapper objectMapper,
+        @Value("${ontology.catalog.file:${storage.location}/ontologies.json}") String file,
+        @Value("${ontology.catalog.timeout:PT30S}") String timeout) {
+        this.ontologyEngine = ontologyEngine;
+        this.ruleSetCache = ruleSetCache;
+        this.executor = executor;
+        this.objectMapper = objectMapper;
+        this.file = Paths.get(file);
+        this.timeout = Duration.parse(timeout);
+        load();
+    }
+
+    /**
+     * Returns the metadata of the ontology, without contacting the ontology
+     * engine.
+     *
+     * @param cvIdentifier the cv identifier, e.g. MS or UO.
+     * @return the ontology metadata, or an empty optional if the ontology is
+     * not known or was not retrieved yet.
+     */
+    public Optional<OntologyInfo> get(String cvIdentifier) {
+        return Optional.ofNullable(ontologies.get(cvIdentifier.toLowerCase()));
+    }
+
+    /**
+     * Returns the ids and versions of all ontologies in the catalog. The
+     * value changes whenever the version of an ontology changes.
+     *
+     * @return the ontology ids and versions, e.g. <code>ms=4.1.30,uo=...</code>.
+     */
+    public String getVersions() {
+        return versions;
+    }
+
+    public boolean isAvailable() {
+        return available.get();
+    }
+
+    /**
+     * Retrieves the metadata of all referenced ontologies in the background.
+     * Ontologies that can not be retrieved keep their previous metadata.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${ontology.catalog.refreshInterval:86400000}", initialDelayString = "${ontology.catalog.refreshInterval:86400000}")
+    public void refresh() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        List<CompletableFuture<Optional<OntologyInfo>>> retrievals = new ArrayList<>();
+        for (CvReference cvReference : ruleSetCache.getDefault().
+            getCvReferenceList().
+            getCvReference()) {
+            String cvIdentifier = cvReference.getCvIdentifier();
+            retrievals.add(CompletableFuture.supplyAsync(() -> ontologyEngine.
+                getOntology(cvIdentifier), executor).
+                orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS).
+                exceptionally((throwable) ->
+                {
+                    log.warn("Could not retrieve ontology {}: {}", cvIdentifier,
+                        throwable.getMessage());
+                    return Optional.empty();
+                }).
+                thenApply((ontology) ->
+                {
+                    ontology.ifPresent((info) -> ontologies.put(cvIdentifier.
+                        toLowerCase(), info));
+                    return ontology;
+                }));
+        }
+        CompletableFuture.allOf(retrievals.toArray(new CompletableFuture[0])).
+            whenComplete((result, throwable) ->
+            {
+                log.info("Retrieved {} of {} ontologies", retrievals.stream().
+                    filter((retrieval) -> retrieval.join().
+                    isPresent()).
+                    count(), retrievals.size());
+                versions = versionsOf(ontologies);
+                persist();
+                available.set(true);
+                refreshing.set(false);
+            });
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = available.get() ? Health.up() : Health.
+            outOfService();
+        return builder.withDetail("ontologies", ontologies.size()).
+            build();
+    }
+
+    private static String versionsOf(Map<String, OntologyInfo> ontologies) {
+        return ontologies.values().
+            stream().
+            map((info) -> info.getId() + "=" + info.getVersion()).
+            sorted().
+            collect(Collectors.joining(","));
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try {
+            for (JsonNode node : objectMapper.readTree(file.toFile())) {
+                OntologyInfo info = new OntologyInfo(node.path("id").
+                    asText(), node.path("title").
+                        asText(null), node.path("version").
+                        asText(null));
+                ontologies.put(info.getId().
+                    toLowerCase(), info);
+            }
+            versions = versionsOf(ontologies);
+            available.set(true);
+            log.info("Loaded {} ontologies from {}", ontologies.size(), file);
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Could not load ontology snapshot from " + file, ex);
+        }
+    }
+
+    private void persist() {
+        ArrayNode array = objectMapper.createArrayNode();
+        ontologies.values().
+            stream().
+            sorted((a, b) -> a.getId().
+            compareTo(b.getId())).
+            forEach((info) ->
+            {
+                ObjectNode node = array.addObject();
+                node.put("id", info.getId());
+                node.put("title", info.getTitle());
+                node.put("version", info.getVersion());
+            });
+        try {
+            AtomicFiles.write(file, (tmp) -> objectMapper.writeValue(tmp.
+                toFile(), array));
+        } catch (IOException ex) {
+            log.warn("Could not persist ontology snapshot to " + file, ex);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.ontology;
+
+import info.psidev.cvmapping.CvTerm;
+import java.util.List;
+import java.util.Optional;
+import org.lifstools.mztab2.cvmapping.CvParameterLookupService;
+import org.lifstools.mztab2.model.Parameter;
+
+/**
+ * Provides ontology metadata, term suggestions and the
+ * {@link CvParameterLookupService} used by the semantic validation. The
+ * implementation is selected with the <code>ontology.engine</code> property,
+ * <code>ols</code> queries the remote Ontology Lookup Service,
+ * <code>offline</code> uses local OBO snapshot files.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+public interface OntologyEngine {
+
+    CvParameterLookupService getLookupService();
+
+    /**
+     * Returns the metadata of the ontology.
+     *
+     * @param cvIdentifier the cv identifier, e.g. MS or UO.
+     * @return the ontology metadata, or an empty optional if the ontology is
+     * not known.
+     */
+    Optional<OntologyInfo> getOntology(String cvIdentifier);
+
+    /**
+     * Returns the terms whose name matches the partial name and which are
+     * allowed by the cv term of a mapping rule.
+     *
+     * @param partialName the partial term name.
+     * @param cvTerm the cv term of a mapping rule.
+     * @return the matching terms as parameters.
+     */
+    List<Parameter> suggestTerms(String partialName, CvTerm cvTerm);
+
+    /**
+     * Returns the accessions of the descendants of a term.
+     *
+     * @param cvIdentifier the cv identifier, e.g. MS or UO.
+     * @param accession the term accession.
+     * @param maxDepth the maximum number of is_a levels to descend.
+     * @return the descendants, empty if the term is not known.
+     */
+    TermDescendants getDescendants(String cvIdentifier, String accession,
+        int maxDepth);
+
+    /**
+     * Returns the descendants of a term with their names.
+     *
+     * @param cvIdentifier the cv identifier, e.g. MS or UO.
+     * @param accession the term accession.
+     * @param maxDepth the maximum number of is_a levels to descend.
+     * @return the descendants as parameters, empty if the term is not known.
+     */
+    List<Parameter> getDescendantTerms(String cvIdentifier, String accession,
+        int maxDepth);
+
+    /**
+     * Returns the name, obsolete flag and parents of a term.
+     *
+     * @param cvIdentifier the cv identifier, e.g. MS or UO.
+     * @param accession the term accession.
+     * @return the term, or an empty optional if the term is not known.
+     */
+    Optional<TermInfo> resolveTerm(String cvIdentifier, String accession);
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.ontology;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.lifstools.mztab.validator.webapp.service.storage.AtomicFiles;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * A two level cache for responses of the Ontology Lookup Service. The first
+ * level is a bounded, least recently used in-memory map, the second level
+ * stores one file per entry below the cache directory and survives restarts.
+ * Entries are written through to both levels.
+ *
+ * Lookups that found nothing are cached as negative entries with a shorter
+ * time to live than positive entries. Failed lookups are not cached. If a
+ * lookup fails with an {@link OntologyUnavailableException}, an expired entry
+ * for the key is returned instead, if there is one.
+ *
+ * The disk level is swept on the <code>oldFileMaintenanceSchedule</code>:
+ * entries that expired more than <code>ontology.cache.staleRetention</code>
+ * ago are deleted and, if more than <code>ontology.cache.maxDiskEntries</code>
+ * remain, those that expire first.
+ *
+ * Hits per level and misses are exported as the
+ * <code>ontology.cache.hits</code> and <code>ontology.cache.misses</code>
+ * metrics.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Slf4j
+@Service
+public class OntologyResponseCache implements MeterBinder {
+
+    private static final HexFormat HEX = HexFormat.of();
+    private static final String POSITIVE = "+";
+    private static final String NEGATIVE = "-";
+
+    private final Path directory;
+    private final int maxEntries;
+    private final Duration ttl;
+    private final Duration negativeTtl;
+    private final int maxDiskEntries;
+    private final Duration staleRetention;
+    private final Clock clock;
+    private final Map<String, Entry> entries;
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+
+    @Autowired
+    public OntologyResponseCache(
+        @Value("${ontology.cache.directory:${storage.location}/ols-cache}") String directory,
+        @Value("${ontology.cache.maxEntries:10000}") int maxEntries,
+        @Value("${ontology.cache.ttl:P7D}") String ttl,
+        @Value("${ontology.cache.negativeTtl:PT1H}") String negativeTtl,
+        @Value("${ontology.cache.maxDiskEntries:100000}") int maxDiskEntries,
+        @Value("${ontology.cache.staleRetention:P30D}") String staleRetention) {
+        this(Paths.get(directory), maxEntries, Duration.parse(ttl), Duration.
+            parse(negativeTtl), maxDiskEntries, Duration.parse(staleRetention),
+            Clock.systemUTC());
+    }
+
+    public OntologyResponseCache(Path directory, int maxEntries, Duration ttl,
+        Duration negativeTtl, int maxDiskEntries, Duration staleRetention,
+        Clock clock) {
+        this.directory = directory;
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.maxDiskEntries = maxDiskEntries;
+        this.staleRetention = staleRetention;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Entry> eldest) {
+                return size() > OntologyResponseCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value for the key, or loads, caches and returns it.
+     *
+     * @param <T> the value type.
+     * @param key the cache key, must not contain line breaks.
+     * @param loader loads the value, returns null if nothing was found.
+     * @param encoder converts the value to its cached string form, which
+     * must not contain line breaks.
+     * @param decoder converts the cached string form back to the value.
+     * @return the value, or null for a negative entry.
+     */
+    public <T> T get(String key, Supplier<T> loader,
+        Function<T, String> encoder, Function<String, T> decoder) {
+        long now = clock.millis();
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null && entry.expiresAt > now) {
+            memoryHits.incrementAndGet();
+            return entry.value == null ? null : decoder.apply(entry.value);
+        }
+        Entry stale = entry;
+        entry = readFromDisk(key);
+        if (entry != null && entry.expiresAt > now) {
+            diskHits.incrementAndGet();
+            putInMemory(key, entry);
+            return entry.value == null ? null : decoder.apply(entry.value);
+        }
+        if (entry != null) {
+            stale = entry;
+        }
+        misses.incrementAndGet();
+        T value;
+        try {
+            value = loader.get();
+        } catch (OntologyUnavailableException ex) {
+            if (stale == null) {
+                throw ex;
+            }
+            staleHits.incrementAndGet();
+            log.debug("Using expired entry for {}: {}", key, ex.getMessage());
+            return stale.value == null ? null : decoder.apply(stale.value);
+        }
+        String encoded = value == null ? null : encoder.apply(value);
+        entry = new Entry(encoded, now + (encoded == null ? negativeTtl : ttl).
+            toMillis());
+        putInMemory(key, entry);
+        writeToDisk(key, entry);
+        return value;
+    }
+
+    /**
+     * Deletes the disk entries that expired more than the stale retention ago
+     * and, if more than the maximum number of disk entries remain, those that
+     * expire first. Entries that can not be read are deleted as well.
+     */
+    @Scheduled(cron = "${oldFileMaintenanceSchedule}")
+    public void sweepDisk() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        long oldest = clock.millis() - staleRetention.toMillis();
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory, 2)) {
+            files = walk.filter(Files::isRegularFile).
+                filter((path) -> !path.getFileName().
+                toString().
+                endsWith(".tmp")).
+                collect(Collectors.toList());
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Could not sweep ontology cache directory " + directory, ex);
+            return;
+        }
+        List<Map.Entry<Path, Long>> kept = new ArrayList<>();
+        int deleted = 0;
+        for (Path file : files) {
+            long expiresAt = readExpiry(file);
+            if (expiresAt < oldest) {
+                deleted += delete(file);
+            } else {
+                kept.add(Map.entry(file, expiresAt));
+            }
+        }
+        if (kept.size() > maxDiskEntries) {
+            kept.sort(Map.Entry.comparingByValue(Comparator.naturalOrder()));
+            for (Map.Entry<Path, Long> entry : kept.subList(0, kept.size()
+                - maxDiskEntries)) {
+                deleted += delete(entry.getKey());
+            }
+        }
+        log.info("Deleted {} ontology cache entries from {}", deleted,
+            directory);
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getStaleHits() {
+        return staleHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private void putInMemory(String key, Entry entry) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    private Path pathFor(String key) {
+        try {
+            String hash = HEX.formatHex(MessageDigest.getInstance("SHA-256").
+                digest(key.getBytes(StandardCharsets.UTF_8)));
+            return directory.resolve(hash.substring(0, 2)).
+                resolve(hash);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private Entry readFromDisk(String key) {
+        Path file = pathFor(key);
+        try (BufferedReader reader = Files.newBufferedReader(file,
+            StandardCharsets.UTF_8)) {
+            String storedKey = reader.readLine();
+            String expiresAt = reader.readLine();
+            String value = reader.readLine();
+            if (!key.equals(storedKey) || expiresAt == null || value == null) {
+                return null;
+            }
+            long expiry = Long.parseLong(expiresAt);
+            // expired entries are kept until they are replaced
+            return new Entry(value.startsWith(POSITIVE) ? value.substring(1) : null,
+                expiry);
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException | NumberFormatException ex) {
+            log.warn("Could not read ontology cache entry " + file, ex);
+            return null;
+        }
+    }
+
+    /*
+     * Returns the expiry time of a disk entry, or Long.MIN_VALUE if it can not
+     * be read.
+     */
+    private static long readExpiry(Path file) {
+        try (BufferedReader reader = Files.newBufferedReader(file,
+            StandardCharsets.UTF_8)) {
+            reader.readLine();
+            String expiresAt = reader.readLine();
+            return expiresAt == null ? Long.MIN_VALUE : Long.parseLong(
+                expiresAt);
+        } catch (NoSuchFileException ex) {
+            return Long.MAX_VALUE;
+        } catch (IOException | NumberFormatException ex) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static int delete(Path file) {
+        try {
+            return Files.deleteIfExists(file) ? 1 : 0;
+        } catch (IOException ex) {
+            log.warn("Could not delete ontology cache entry " + file, ex);
+            return 0;
+        }
+    }
+
+    private void writeToDisk(String key, Entry entry) {
+        Path file = pathFor(key);
+        try {
+            AtomicFiles.write(file, (tmp) ->
+            {
+                try (BufferedWriter writer = Files.newBufferedWriter(tmp,
+                    StandardCharsets.UTF_8)) {
+                    writer.write(key);
+                    writer.newLine();
+                    writer.write(Long.toString(entry.expiresAt));
+                    writer.newLine();
+                    writer.write(entry.value == null ? NEGATIVE : POSITIVE
+                        + entry.value);
+                    writer.newLine();
+                }
+            });
+        } catch (IOException ex) {
+            log.warn("Could not write ontology cache entry " + file, ex);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("ontology.cache.hits", memoryHits,
+            AtomicLong::get).
+            tag("tier", "memory").
+            description("Ontology lookups answered from memory").
+            register(registry);
+        FunctionCounter.builder("ontology.cache.hits", diskHits,
+            AtomicLong::get).
+            tag("tier", "disk").
+            description("Ontology lookups answered from disk").
+            register(registry);
+        FunctionCounter.builder("ontology.cache.hits", staleHits,
+            AtomicLong::get).
+            tag("tier", "stale").
+            description("Ontology lookups answered from expired entries while the remote service was unavailable").
+            register(registry);
+        FunctionCounter.builder("ontology.cache.misses", misses,
+            AtomicLong::get).
+            description("Ontology lookups sent to the remote service").
+            register(registry);
+        Gauge.builder("ontology.cache.size", this,
+            OntologyResponseCache::size).
+            description("Number of ontology responses cached in memory").
+            register(registry);
+    }
+
+    private static final class Entry {
+
+        private final String value;
+        private final long expiresAt;
+
+        Entry(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
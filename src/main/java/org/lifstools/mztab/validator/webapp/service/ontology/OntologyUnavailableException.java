@@ -0,0 +1,34 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.ontology;
+
+/**
+ * Thrown when an ontology lookup could not be answered, because the remote
+ * service timed out, failed or is not called while its circuit breaker is
+ * open.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+public class OntologyUnavailableException extends RuntimeException {
+
+    public OntologyUnavailableException(String message) {
+        super(message);
+    }
+
+    public OntologyUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
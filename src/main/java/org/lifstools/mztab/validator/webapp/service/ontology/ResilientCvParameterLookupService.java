@@ -0,0 +1,272 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.ontology;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.lifstools.mztab2.cvmapping.CvParameterLookupService;
+import org.lifstools.mztab2.cvmapping.ParameterComparisonResult;
+import org.lifstools.mztab2.model.Parameter;
+import uk.ac.ebi.pride.utilities.ols.web.service.client.OLSClient;
+
+/**
+ * A {@link CvParameterLookupService} that protects its callers from a slow or
+ * unavailable Ontology Lookup Service. At most maxConcurrent lookups are sent
+ * to the remote service at a time, each is abandoned after the timeout but
+ * keeps its slot until the remote call actually returns.
+ * After failureThreshold consecutive failures, the circuit opens and all
+ * lookups fail immediately for openDuration. Then a single trial lookup is
+ * let through, which closes the circuit again if it succeeds.
+ *
+ * Lookups that are not answered throw an
+ * {@link OntologyUnavailableException}. The circuit state is exported as the
+ * <code>ontology.lookup.circuit</code> gauge, 0 is closed, 1 open and 2 half
+ * open.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Slf4j
+public class ResilientCvParameterLookupService extends CvParameterLookupService implements MeterBinder {
+
+    private static final int CLOSED = 0;
+    private static final int OPEN = 1;
+    private static final int HALF_OPEN = 2;
+
+    private final Semaphore permits;
+    private final ExecutorService executor;
+    private final Duration timeout;
+    private final Duration queueTimeout;
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Clock clock;
+    private final AtomicInteger state = new AtomicInteger(CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong openedAt = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public ResilientCvParameterLookupService(OLSClient client,
+        int maxConcurrent, Duration timeout, Duration queueTimeout,
+        int failureThreshold, Duration openDuration) {
+        this(client, maxConcurrent, timeout, queueTimeout, failureThreshold,
+            openDuration, Clock.systemUTC());
+    }
+
+    public ResilientCvParameterLookupService(OLSClient client,
+        int maxConcurrent, Duration timeout, Duration queueTimeout,
+        int failureThreshold, Duration openDuration, Clock clock) {
+        super(client);
+        this.permits = new Semaphore(maxConcurrent);
+        // one thread per permit, so that an acquired permit never waits for a thread
+        this.executor = new ThreadPoolExecutor(0, maxConcurrent, 60,
+            TimeUnit.SECONDS, new SynchronousQueue<>(), (runnable) ->
+        {
+            Thread thread = new Thread(runnable, "ontology-lookup-remote");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timeout = timeout;
+        this.queueTimeout = queueTimeout;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.clock = clock;
+    }
+
+    @Override
+    public ParameterComparisonResult isChildOfOrSame(Parameter parent,
+        Parameter child) {
+        return call(() -> super.isChildOfOrSame(parent, child));
+    }
+
+    /**
+     * Calls the remote service through the circuit breaker.
+     *
+     * @param <T> the result type.
+     * @param request the remote call.
+     * @return the result of the call.
+     * @throws OntologyUnavailableException if the call was rejected, timed
+     * out or failed.
+     */
+    public <T> T call(Supplier<T> request) {
+        return call(request, timeout);
+    }
+
+    /**
+     * Calls the remote service through the circuit breaker with a timeout
+     * other than the default, e.g. for calls that return many terms.
+     *
+     * @param <T> the result type.
+     * @param request the remote call.
+     * @param timeout the time to wait for the result.
+     * @return the result of the call.
+     * @throws OntologyUnavailableException if the call was rejected, timed
+     * out or failed.
+     */
+    public <T> T call(Supplier<T> request, Duration timeout) {
+        if (!allowRequest()) {
+            rejected.incrementAndGet();
+            throw new OntologyUnavailableException(
+                "Ontology lookup service is unavailable, retrying in at most " + openDuration);
+        }
+        try {
+            if (!permits.tryAcquire(queueTimeout.toMillis(),
+                TimeUnit.MILLISECONDS)) {
+                rejected.incrementAndGet();
+                if (state.get() == HALF_OPEN) {
+                    state.compareAndSet(HALF_OPEN, OPEN);
+                }
+                throw new OntologyUnavailableException(
+                    "Too many concurrent ontology lookups");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().
+                interrupt();
+            throw new OntologyUnavailableException(
+                "Interrupted while waiting for ontology lookup", ex);
+        }
+        // the permit is held until the remote call returns, not until the
+        // caller gives up, so that calls stuck in uninterruptible IO keep
+        // counting against maxConcurrent
+        AtomicBoolean started = new AtomicBoolean();
+        Future<T> result;
+        try {
+            result = executor.submit(() -> {
+                if (!started.compareAndSet(false, true)) {
+                    return null;
+                }
+                try {
+                    return request.get();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            permits.release();
+            onFailure();
+            throw new OntologyUnavailableException(
+                "No thread available for ontology lookup", ex);
+        }
+        try {
+            T response = result.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            onSuccess();
+            return response;
+        } catch (TimeoutException ex) {
+            abandon(result, started);
+            onFailure();
+            throw new OntologyUnavailableException(
+                "Ontology lookup timed out after " + timeout, ex);
+        } catch (ExecutionException ex) {
+            onFailure();
+            throw new OntologyUnavailableException(
+                "Ontology lookup failed: " + ex.getCause().
+                    getMessage(), ex.getCause());
+        } catch (InterruptedException ex) {
+            abandon(result, started);
+            Thread.currentThread().
+                interrupt();
+            throw new OntologyUnavailableException(
+                "Interrupted while waiting for ontology lookup", ex);
+        }
+    }
+
+    /**
+     * Cancels a call the caller no longer waits for. The permit is released
+     * here only if the call never started, otherwise the call releases it
+     * when it returns.
+     */
+    private void abandon(Future<?> result, AtomicBoolean started) {
+        result.cancel(true);
+        if (started.compareAndSet(false, true)) {
+            permits.release();
+        }
+    }
+
+    private boolean allowRequest() {
+        switch (state.get()) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.millis() - openedAt.get() >= openDuration.toMillis()) {
+                    // only the first caller after the open duration gets the trial
+                    return state.compareAndSet(OPEN, HALF_OPEN);
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private void onSuccess() {
+        consecutiveFailures.set(0);
+        if (state.getAndSet(CLOSED) != CLOSED) {
+            log.info("Ontology lookup circuit closed");
+        }
+    }
+
+    private void onFailure() {
+        failures.incrementAndGet();
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold || state.
+            get() == HALF_OPEN) {
+            openedAt.set(clock.millis());
+            if (state.getAndSet(OPEN) != OPEN) {
+                log.warn("Ontology lookup circuit opened for {}", openDuration);
+            }
+        }
+    }
+
+    public boolean isOpen() {
+        return state.get() != CLOSED;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("ontology.lookup.circuit", state, AtomicInteger::get).
+            description("State of the ontology lookup circuit breaker, 0 closed, 1 open, 2 half open").
+            register(registry);
+        FunctionCounter.builder("ontology.lookup.rejected", rejected,
+            AtomicLong::get).
+            description("Ontology lookups rejected without calling the remote service").
+            register(registry);
+        FunctionCounter.builder("ontology.lookup.failures", failures,
+            AtomicLong::get).
+            description("Ontology lookups that timed out or failed").
+            register(registry);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.ontology;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import lombok.Value;
+
+/**
+ * The name, obsolete flag and direct <code>is_a</code> parents of an
+ * ontology term.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Value
+public class TermInfo {
+
+    String accession;
+    String name;
+    boolean obsolete;
+    List<String> parents;
+
+    /**
+     * Encodes the term as a single line for the {@link OntologyResponseCache}.
+     *
+     * @param term the term.
+     * @return the encoded term.
+     */
+    static String encode(TermInfo term) {
+        return term.getAccession() + "\t" + (term.getName() == null ? "" : term.
+            getName().
+            replaceAll("[\t\r\n]", " ")) + "\t" + term.isObsolete() + "\t"
+            + String.join(",", term.getParents());
+    }
+
+    static TermInfo decode(String encoded) {
+        String[] fields = encoded.split("\t", -1);
+        return new TermInfo(fields[0], fields[1].isEmpty() ? null : fields[1],
+            Boolean.parseBoolean(fields[2]), fields[3].isEmpty() ? Collections.
+            emptyList() : Arrays.asList(fields[3].split(",")));
+    }
+}
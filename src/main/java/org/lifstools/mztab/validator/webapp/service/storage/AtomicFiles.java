@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Replaces files atomically: the content is written to a temporary file in
+ * the target directory, which is then moved over the target file. Readers
+ * therefore see either the old or the new content, never a partial file.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+public final class AtomicFiles {
+
+    /**
+     * Writes the content of a file.
+     */
+    @FunctionalInterface
+    public interface ContentWriter {
+
+        void write(Path file) throws IOException;
+    }
+
+    private AtomicFiles() {
+    }
+
+    /**
+     * Writes the file via a temporary file and an atomic move. The temporary
+     * file is deleted, if writing or moving fails.
+     *
+     * @param file the target file, parent directories are created.
+     * @param contentWriter writes the content to the temporary file.
+     * @throws IOException if the file could not be written.
+     */
+    public static void write(Path file, ContentWriter contentWriter) throws IOException {
+        Path directory = file.toAbsolutePath().
+            getParent();
+        Files.createDirectories(directory);
+        Path tmp = Files.createTempFile(directory, file.getFileName().
+            toString(), ".tmp");
+        try {
+            contentWriter.write(tmp);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException ex) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException suppressed) {
+                ex.addSuppressed(suppressed);
+            }
+            throw ex;
+        }
+    }
+}
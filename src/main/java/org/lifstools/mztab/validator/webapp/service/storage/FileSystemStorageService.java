@@ -21,18 +21,27 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -40,6 +49,7 @@ import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -56,14 +66,20 @@ import org.springframework.web.multipart.MultipartFile;
 @Service
 public class FileSystemStorageService implements StorageService {
 
+    private static final HexFormat HEX = HexFormat.of();
+
     private final Path rootLocation;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Map<Path, String> contentHashes = new ConcurrentHashMap<>();
 
     @Value("${minCleanupAge}")
     private Long minCleanupAge = 7l;
 
     @Autowired
-    public FileSystemStorageService(StorageProperties properties) {
+    public FileSystemStorageService(StorageProperties properties,
+        ApplicationEventPublisher eventPublisher) {
         this.rootLocation = Paths.get(properties.getLocation());
+        this.eventPublisher = eventPublisher;
     }
 
     public void setMinCleanupAge(long days) {
@@ -88,8 +104,13 @@ public class FileSystemStorageService implements StorageService {
             Path filePath = buildPathToFile(sessionPath,
                 filename, slot);
             Files.createDirectories(filePath.getParent());
-            Files.copy(file.getInputStream(), filePath,
-                StandardCopyOption.REPLACE_EXISTING);
+            MessageDigest digest = newContentDigest();
+            try (DigestInputStream is = new DigestInputStream(file.
+                getInputStream(), digest)) {
+                Files.copy(is, filePath,
+                    StandardCopyOption.REPLACE_EXISTING);
+            }
+            contentHashes.put(filePath, HEX.formatHex(digest.digest()));
             return new UserSessionFile(filename, sessionId);
         } catch (IOException e) {
             throw new StorageException("Failed to store file " + filename, e);
@@ -144,9 +165,12 @@ public class FileSystemStorageService implements StorageService {
             Path sessionPath = buildSessionPath(sessionId);
             Path filePath = buildPathToFile(sessionPath, filename, slot);
             Files.createDirectories(filePath.getParent());
-            Files.write(filePath, fileContent.
-                getBytes("UTF-8"), StandardOpenOption.CREATE,
+            byte[] content = fileContent.
+                getBytes("UTF-8");
+            Files.write(filePath, content, StandardOpenOption.CREATE,
                 StandardOpenOption.WRITE);
+            contentHashes.put(filePath, HEX.formatHex(newContentDigest().
+                digest(content)));
             return new UserSessionFile(filename, sessionId);
         } catch (IOException e) {
             throw new StorageException("Failed to store file " + filename, e);
@@ -171,6 +195,22 @@ public class FileSystemStorageService implements StorageService {
         }
     }
 
+    @Override
+    public Optional<UserSessionFile> find(UUID sessionId, SLOT slot) {
+        Path slotPath = buildSessionPath(sessionId).resolve(slot.name());
+        if (!Files.isDirectory(slotPath)) {
+            return Optional.empty();
+        }
+        try (Stream<Path> files = Files.list(slotPath)) {
+            return files.findFirst().
+                map(path ->
+                    new UserSessionFile(slotPath.relativize(path).
+                        toString(), sessionId));
+        } catch (IOException ex) {
+            throw new StorageException("Failed to read stored files", ex);
+        }
+    }
+
     @Override
     public Stream<Path> loadAll(UUID sessionId) {
         Path sessionPath = buildSessionPath(sessionId);
@@ -194,7 +234,7 @@ public class FileSystemStorageService implements StorageService {
         try {
             Files.newDirectoryStream(this.rootLocation, path ->
                 path.toFile().
-                    isDirectory()).
+                    isDirectory() && isSessionDirectory(path)).
                 forEach((dir) ->
                 {
                     try {
@@ -207,6 +247,9 @@ public class FileSystemStorageService implements StorageService {
                         if (days >= minCleanupAge) {
                             log.info("Deleting {}", dir);
                             FileSystemUtils.deleteRecursively(dir.toFile());
+                            contentHashes.keySet().
+                                removeIf((path) -> path.startsWith(dir));
+                            publishSessionFilesDeleted(dir);
                         } else {
                             log.info("Not deleting {}", dir);
                         }
@@ -224,6 +267,24 @@ public class FileSystemStorageService implements StorageService {
         log.info("Stopping old file maintenance");
     }
 
+    private void publishSessionFilesDeleted(Path sessionDir) {
+        UUID sessionId = UUID.fromString(sessionDir.getFileName().
+            toString());
+        eventPublisher.publishEvent(new SessionFilesDeletedEvent(sessionId));
+    }
+
+    // other directories, e.g. the ontology cache, are not subject to cleanup
+    private static boolean isSessionDirectory(Path dir) {
+        try {
+            UUID.fromString(dir.getFileName().
+                toString());
+            return true;
+        } catch (IllegalArgumentException ex) {
+            log.debug("Directory {} is not a session directory", dir);
+            return false;
+        }
+    }
+
     private Path buildSessionPath(UUID sessionId) {
         if (sessionId == null) {
             throw new StorageException(
@@ -272,15 +333,55 @@ public class FileSystemStorageService implements StorageService {
         }
     }
 
+    @Override
+    public String getContentHash(UserSessionFile userSessionFile, SLOT slot) {
+        Path file = load(userSessionFile, slot);
+        return contentHashes.computeIfAbsent(file, (path) -> {
+            //e.g. for files stored before a restart
+            MessageDigest digest = newContentDigest();
+            try (DigestInputStream is = new DigestInputStream(Files.
+                newInputStream(path), digest)) {
+                is.transferTo(OutputStream.nullOutputStream());
+            } catch (IOException ex) {
+                throw new StorageException("Failed to read file " + path, ex);
+            }
+            return HEX.formatHex(digest.digest());
+        });
+    }
+
+    private static MessageDigest newContentDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
     @Override
     public void deleteAll(UUID sessionId) {
         Path sessionPath = buildSessionPath(sessionId);
         FileSystemUtils.deleteRecursively(sessionPath.toFile());
+        contentHashes.keySet().
+            removeIf((path) -> path.startsWith(sessionPath));
+        eventPublisher.publishEvent(new SessionFilesDeletedEvent(sessionId));
     }
 
     @Override
     public void deleteAll() {
-        FileSystemUtils.deleteRecursively(this.rootLocation.toFile());
+        // only session directories, the ontology cache survives restarts
+        if (Files.isDirectory(rootLocation)) {
+            try (DirectoryStream<Path> sessionDirs = Files.newDirectoryStream(
+                rootLocation, path ->
+                path.toFile().
+                    isDirectory() && isSessionDirectory(path))) {
+                for (Path sessionDir : sessionDirs) {
+                    FileSystemUtils.deleteRecursively(sessionDir.toFile());
+                }
+            } catch (IOException ex) {
+                throw new StorageException("Could not delete stored files", ex);
+            }
+        }
+        contentHashes.clear();
     }
 
     @Override
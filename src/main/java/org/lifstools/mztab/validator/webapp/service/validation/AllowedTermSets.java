@@ -0,0 +1,308 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.validation;
+
+import info.psidev.cvmapping.CvMapping;
+import info.psidev.cvmapping.CvMappingRule;
+import info.psidev.cvmapping.CvTerm;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.lifstools.mztab.validator.webapp.service.ontology.OboOntologyEngine;
+import org.lifstools.mztab.validator.webapp.service.ontology.OboOntologyStore;
+import org.lifstools.mztab.validator.webapp.service.ontology.OntologyCatalog;
+import org.lifstools.mztab.validator.webapp.service.ontology.OntologyEngine;
+import org.lifstools.mztab.validator.webapp.service.ontology.OntologyInfo;
+import org.lifstools.mztab.validator.webapp.service.ontology.TermDescendants;
+import org.lifstools.mztab.validator.webapp.service.storage.AtomicFiles;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Materialized sets of the accessions allowed by the cv terms of mapping
+ * rules that allow children. The descendants of each term are expanded up
+ * to <code>validation.termSets.maxDepth</code> levels in the background when
+ * a rule set is first used, refreshed periodically and persisted, so that
+ * they survive restarts.
+ *
+ * A parameter whose accession is contained in the set of a term is a
+ * descendant of that term. If the set is complete, accessions that are not
+ * contained are not descendants, otherwise the hierarchy needs to be
+ * checked.
+ *
+ * Each set records the version of its ontology in the
+ * {@link OntologyCatalog} and in the OBO snapshot it was expanded from.
+ * Persisted sets of other versions are skipped on load. Sets whose version no
+ * longer matches after the OBO snapshot was reloaded or the catalog changed
+ * are dropped and expanded again.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Slf4j
+@Service
+public class AllowedTermSets {
+
+    private final OntologyEngine ontologyEngine;
+    private final OboOntologyEngine oboOntologyEngine;
+    private final OntologyCatalog ontologyCatalog;
+    private final CvMappingRuleSetCache ruleSetCache;
+    private final int maxDepth;
+    private final Path file;
+    private final Map<String, TermDescendants> termSets = new ConcurrentHashMap<>();
+    private final Map<String, String> cvIdentifiers = new ConcurrentHashMap<>();
+    private final Map<String, String> versions = new ConcurrentHashMap<>();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+        (runnable) ->
+    {
+        Thread thread = new Thread(runnable, "allowed-term-sets");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile OboOntologyStore store;
+    private volatile String catalogVersions;
+
+    @Autowired
+    public AllowedTermSets(OntologyEngine ontologyEngine,
+        OboOntologyEngine oboOntologyEngine, OntologyCatalog ontologyCatalog,
+        CvMappingRuleSetCache ruleSetCache,
+        @Value("${validation.termSets.maxDepth:10}") int maxDepth,
+        @Value("${validation.termSets.file:${storage.location}/allowed-term-sets.tsv}") String file) {
+        this.ontologyEngine = ontologyEngine;
+        this.oboOntologyEngine = oboOntologyEngine;
+        this.ontologyCatalog = ontologyCatalog;
+        this.store = oboOntologyEngine.getStore();
+        this.catalogVersions = ontologyCatalog.getVersions();
+        this.ruleSetCache = ruleSetCache;
+        this.maxDepth = maxDepth;
+        this.file = Paths.get(file);
+        load();
+    }
+
+    /**
+     * Returns the materialized descendants of the term.
+     *
+     * @param accession the term accession.
+     * @return the descendants, or an empty optional if the term was not
+     * expanded (yet).
+     */
+    public Optional<TermDescendants> get(String accession) {
+        invalidateIfOntologiesChanged();
+        return Optional.ofNullable(termSets.get(accession));
+    }
+
+    /**
+     * Expands the terms of the rule set that allow children and were not
+     * expanded before, in the background.
+     *
+     * @param ruleSet the rule set.
+     */
+    public void expand(CvMapping ruleSet) {
+        invalidateIfOntologiesChanged();
+        List<String> accessions = new ArrayList<>();
+        for (CvMappingRule rule : ruleSet.getCvMappingRuleList().
+            getCvMappingRule()) {
+            for (CvTerm term : rule.getCvTerm()) {
+                if (!term.isAllowChildren() || termSets.containsKey(term.
+                    getTermAccession())) {
+                    continue;
+                }
+                if (term.getCvIdentifierRef() == null || term.
+                    getCvIdentifierRef().
+                    getCvIdentifier() == null) {
+                    log.debug("Not expanding term {} of rule {} without cv reference",
+                        term.getTermAccession(), rule.getId());
+                    continue;
+                }
+                if (pending.add(term.getTermAccession())) {
+                    cvIdentifiers.put(term.getTermAccession(), term.
+                        getCvIdentifierRef().
+                        getCvIdentifier());
+                    accessions.add(term.getTermAccession());
+                }
+            }
+        }
+        expandInBackground(accessions);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void expandDefaultRuleSet() {
+        expand(ruleSetCache.getDefault());
+    }
+
+    @Scheduled(fixedDelayString = "${validation.termSets.refreshInterval:86400000}",
+        initialDelayString = "${validation.termSets.refreshInterval:86400000}")
+    public void refresh() {
+        executor.execute(() -> {
+            log.info("Refreshing {} allowed term sets", termSets.size());
+            for (String accession : new ArrayList<>(termSets.keySet())) {
+                expand(accession);
+            }
+            persist();
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void expandInBackground(List<String> accessions) {
+        if (accessions.isEmpty()) {
+            return;
+        }
+        executor.execute(() -> {
+            for (String accession : accessions) {
+                expand(accession);
+                pending.remove(accession);
+            }
+            persist();
+        });
+    }
+
+    private void expand(String accession) {
+        try {
+            String cvIdentifier = cvIdentifiers.get(accession);
+            String version = versionOf(cvIdentifier);
+            TermDescendants descendants = ontologyEngine.getDescendants(
+                cvIdentifier, accession, maxDepth);
+            versions.put(accession, version);
+            termSets.put(accession, new TermDescendants(Set.copyOf(descendants.
+                getAccessions()), descendants.isComplete()));
+            log.debug("Expanded {} to {} descendants", accession, descendants.
+                getAccessions().
+                size());
+        } catch (RuntimeException ex) {
+            log.warn("Could not expand the descendants of " + accession, ex);
+        }
+    }
+
+    /*
+     * Drops the sets whose ontology version changed after the OBO snapshot
+     * was reloaded or the catalog was refreshed, and expands them again.
+     */
+    private void invalidateIfOntologiesChanged() {
+        OboOntologyStore currentStore = oboOntologyEngine.getStore();
+        String currentVersions = ontologyCatalog.getVersions();
+        if (currentStore == store && currentVersions.equals(catalogVersions)) {
+            return;
+        }
+        synchronized (this) {
+            if (currentStore == store && currentVersions.equals(
+                catalogVersions)) {
+                return;
+            }
+            store = currentStore;
+            catalogVersions = currentVersions;
+        }
+        List<String> accessions = new ArrayList<>();
+        for (String accession : new ArrayList<>(termSets.keySet())) {
+            String version = versions.get(accession);
+            if (!versionOf(cvIdentifiers.get(accession)).equals(version)
+                && pending.add(accession)) {
+                termSets.remove(accession);
+                accessions.add(accession);
+            }
+        }
+        if (!accessions.isEmpty()) {
+            log.info("Ontologies changed, expanding {} allowed term sets again",
+                accessions.size());
+        }
+        expandInBackground(accessions);
+    }
+
+    private String versionOf(String cvIdentifier) {
+        return version(ontologyCatalog.get(cvIdentifier)) + "/" + version(
+            oboOntologyEngine.getStore().
+                getOntology(cvIdentifier));
+    }
+
+    private static String version(Optional<OntologyInfo> ontology) {
+        return ontology.map((info) -> Objects.toString(info.getVersion(), "")).
+            orElse("");
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file,
+            StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 6 || Integer.parseInt(fields[2]) != maxDepth
+                    || !fields[5].equals(versionOf(fields[0]))) {
+                    continue;
+                }
+                Set<String> accessions = fields[4].isEmpty() ? Set.of() : new HashSet<>(
+                    Arrays.asList(fields[4].split(",")));
+                cvIdentifiers.put(fields[1], fields[0]);
+                versions.put(fields[1], fields[5]);
+                termSets.put(fields[1], new TermDescendants(Set.copyOf(
+                    accessions), Boolean.parseBoolean(fields[3])));
+            }
+            log.info("Loaded {} allowed term sets from {}", termSets.size(),
+                file);
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Could not load allowed term sets from " + file, ex);
+        }
+    }
+
+    private void persist() {
+        try {
+            AtomicFiles.write(file, (tmp) ->
+            {
+                try (BufferedWriter writer = Files.newBufferedWriter(tmp,
+                    StandardCharsets.UTF_8)) {
+                    for (Map.Entry<String, TermDescendants> entry : termSets.
+                        entrySet()) {
+                        writer.write(String.join("\t", cvIdentifiers.get(
+                            entry.getKey()), entry.getKey(), Integer.toString(
+                            maxDepth), Boolean.toString(entry.getValue().
+                                isComplete()), String.join(",", entry.
+                                getValue().
+                                getAccessions()), versions.get(entry.getKey())));
+                        writer.newLine();
+                    }
+                }
+            });
+        } catch (IOException ex) {
+            log.warn("Could not persist allowed term sets to " + file, ex);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.validation;
+
+import info.psidev.cvmapping.CvMapping;
+import info.psidev.cvmapping.CvMappingRule;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.lifstools.mztab2.model.MzTab;
+import org.lifstools.mztab2.model.Parameter;
+
+/**
+ * A CvMapping rule set compiled for repeated evaluation. The
+ * <code>cvElementPath</code> selector of each rule, e.g.
+ * <code>/metadata/msRun/@format</code>, is resolved once into a chain of
+ * getters of the mzTab object model. The chains of all rules are merged into
+ * a tree, so that {@link #select(MzTab)} visits every object of the model
+ * only once and hands the selected parameters to all rules whose selector
+ * ends at that object type.
+ *
+ * Rules with selectors that can not be resolved against the object model are
+ * marked as not compiled and need to be evaluated by the
+ * {@link org.lifstools.mztab2.validation.CvMappingValidator}.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Slf4j
+public class CvMappingEvaluationPlan {
+
+    private final CvMapping ruleSet;
+    private final List<CvMappingRule> rules;
+    private final boolean[] compiled;
+    private final String[] signatures;
+    private final SelectorNode root = new SelectorNode(MzTab.class);
+
+    private CvMappingEvaluationPlan(CvMapping ruleSet) {
+        this.ruleSet = ruleSet;
+        this.rules = Collections.unmodifiableList(new ArrayList<>(ruleSet.
+            getCvMappingRuleList().
+            getCvMappingRule()));
+        this.compiled = new boolean[rules.size()];
+        this.signatures = new String[rules.size()];
+        for (int i = 0; i < rules.size(); i++) {
+            compiled[i] = compile(i, rules.get(i));
+            signatures[i] = RuleVerdictCache.signature(rules.get(i));
+        }
+    }
+
+    /**
+     * Compiles the selectors of the rule set.
+     *
+     * @param ruleSet the rule set.
+     * @return the evaluation plan.
+     */
+    public static CvMappingEvaluationPlan compile(CvMapping ruleSet) {
+        return new CvMappingEvaluationPlan(ruleSet);
+    }
+
+    public CvMapping getRuleSet() {
+        return ruleSet;
+    }
+
+    public List<CvMappingRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Returns true, if the selector of the rule was resolved and its
+     * parameters are returned by {@link #select(MzTab)}.
+     *
+     * @param ruleIndex the index of the rule in the rule set.
+     * @return true if the rule was compiled.
+     */
+    public boolean isCompiled(int ruleIndex) {
+        return compiled[ruleIndex];
+    }
+
+    public String getRuleSignature(int ruleIndex) {
+        return signatures[ruleIndex];
+    }
+
+    /**
+     * Traverses the mzTab model once and collects the parameters selected by
+     * each compiled rule.
+     *
+     * @param mzTab the mzTab model.
+     * @return the selected parameters, indexed like the rules of the rule
+     * set. Rules that were not compiled select an empty list.
+     */
+    public List<List<Parameter>> select(MzTab mzTab) {
+        List<List<Parameter>> selection = new ArrayList<>(rules.size());
+        for (int i = 0; i < rules.size(); i++) {
+            selection.add(new ArrayList<>());
+        }
+        if (mzTab != null) {
+            root.visit(mzTab, selection);
+        }
+        return selection;
+    }
+
+    private boolean compile(int ruleIndex, CvMappingRule rule) {
+        String path = rule.getCvElementPath();
+        if (path == null || !path.startsWith("/")) {
+            log.warn("Rule {} has no absolute cvElementPath: {}", rule.getId(),
+                path);
+            return false;
+        }
+        SelectorNode node = root;
+        for (String segment : path.substring(1).
+            split("/")) {
+            String property = segment.startsWith("@") ? segment.substring(1) : segment;
+            node = node.child(property);
+            if (node == null) {
+                log.warn(
+                    "Could not resolve property {} of cvElementPath {} for rule {}",
+                    property, path, rule.getId());
+                return false;
+            }
+        }
+        node.ruleIndices.add(ruleIndex);
+        return true;
+    }
+
+    /**
+     * A resolved selector prefix. The node knows the type of the objects it
+     * receives, the getters of its child nodes and the rules whose selector
+     * ends here.
+     */
+    private static class SelectorNode {
+
+        private final Class<?> type;
+        private final Map<String, Method> getters = new LinkedHashMap<>();
+        private final Map<String, SelectorNode> children = new LinkedHashMap<>();
+        private final List<Integer> ruleIndices = new ArrayList<>();
+
+        SelectorNode(Class<?> type) {
+            this.type = type;
+        }
+
+        SelectorNode child(String property) {
+            SelectorNode child = children.get(property);
+            if (child != null) {
+                return child;
+            }
+            PropertyDescriptor descriptor = findProperty(type, property);
+            if (descriptor == null || descriptor.getReadMethod() == null) {
+                return null;
+            }
+            Method getter = descriptor.getReadMethod();
+            child = new SelectorNode(elementType(getter));
+            getters.put(property, getter);
+            children.put(property, child);
+            return child;
+        }
+
+        void visit(Object value, List<List<Parameter>> selection) {
+            if (value == null) {
+                return;
+            }
+            if (value instanceof Collection) {
+                for (Object element : (Collection<?>) value) {
+                    visit(element, selection);
+                }
+                return;
+            }
+            if (!ruleIndices.isEmpty() && value instanceof Parameter) {
+                for (Integer ruleIndex : ruleIndices) {
+                    selection.get(ruleIndex).
+                        add((Parameter) value);
+                }
+            }
+            for (Map.Entry<String, Method> getter : getters.entrySet()) {
+                children.get(getter.getKey()).
+                    visit(invoke(getter.getValue(), value), selection);
+            }
+        }
+
+        private static Object invoke(Method getter, Object target) {
+            try {
+                return getter.invoke(target);
+            } catch (IllegalAccessException | InvocationTargetException ex) {
+                throw new IllegalStateException("Could not read property "
+                    + getter.getName() + " of " + target.getClass().
+                        getSimpleName(), ex);
+            }
+        }
+
+        private static PropertyDescriptor findProperty(Class<?> type,
+            String property) {
+            try {
+                for (PropertyDescriptor descriptor : Introspector.getBeanInfo(
+                    type).
+                    getPropertyDescriptors()) {
+                    if (descriptor.getName().
+                        equals(property)) {
+                        return descriptor;
+                    }
+                }
+            } catch (IntrospectionException ex) {
+                log.warn("Could not introspect type " + type.getName(), ex);
+            }
+            return null;
+        }
+
+        private static Class<?> elementType(Method getter) {
+            if (Collection.class.isAssignableFrom(getter.getReturnType())) {
+                Type returnType = getter.getGenericReturnType();
+                if (returnType instanceof ParameterizedType) {
+                    Type elementType = ((ParameterizedType) returnType).
+                        getActualTypeArguments()[0];
+                    if (elementType instanceof Class) {
+                        return (Class<?>) elementType;
+                    }
+                }
+                return Object.class;
+            }
+            return getter.getReturnType();
+        }
+    }
+}
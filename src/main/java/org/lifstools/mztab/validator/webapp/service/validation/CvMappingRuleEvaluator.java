@@ -0,0 +1,250 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.validation;
+
+import info.psidev.cvmapping.CvMappingRule;
+import info.psidev.cvmapping.CvTerm;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import org.lifstools.mztab.validator.webapp.service.ontology.OntologyUnavailableException;
+import org.lifstools.mztab.validator.webapp.service.ontology.TermDescendants;
+import org.lifstools.mztab2.cvmapping.CvMappingUtils;
+import org.lifstools.mztab2.cvmapping.CvParameterLookupService;
+import org.lifstools.mztab2.cvmapping.ParameterComparisonResult;
+import org.lifstools.mztab2.model.Parameter;
+import org.lifstools.mztab2.model.ValidationMessage;
+
+/**
+ * Checks the parameters selected by a CvMapping rule against the rule's
+ * terms. A rule is satisfied if at least one parameter was selected, every
+ * selected parameter matches one of the rule's terms and the combination
+ * logic AND, OR or XOR of the rule holds. Violations are reported with the
+ * message type of the rule's requirement level: ERROR for MUST, WARN for
+ * SHOULD and INFO for MAY. Missing parameters are not reported for MAY
+ * rules, parameters that match none of the terms are reported as ERROR if
+ * terms not covered by a rule are errors, otherwise as WARN.
+ * Children of terms are looked up in the {@link AllowedTermSets} first, the
+ * hierarchy is only checked for parameters that are not contained there. The
+ * terms matched by a parameter are remembered across validations in the
+ * {@link RuleVerdictCache}.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+public class CvMappingRuleEvaluator {
+
+    private final CvParameterLookupService lookupService;
+    private final AllowedTermSets allowedTermSets;
+    private final RuleVerdictCache verdicts;
+
+    public CvMappingRuleEvaluator(CvParameterLookupService lookupService,
+        AllowedTermSets allowedTermSets, RuleVerdictCache verdicts) {
+        this.lookupService = lookupService;
+        this.allowedTermSets = allowedTermSets;
+        this.verdicts = verdicts;
+    }
+
+    /**
+     * Validates the parameters selected by the rule.
+     *
+     * @param rule the rule.
+     * @param ruleSignature the signature of the rule, see
+     * {@link RuleVerdictCache#signature(CvMappingRule)}.
+     * @param selected the parameters selected by the rule's cvElementPath.
+     * @param errorIfTermNotInRule whether parameters that match none of the
+     * rule's terms are reported as errors.
+     * @return the violations of the rule, empty if the rule is satisfied.
+     */
+    public List<ValidationMessage> validate(CvMappingRule rule,
+        String ruleSignature, List<Parameter> selected,
+        boolean errorIfTermNotInRule) {
+        List<ValidationMessage> messages = new ArrayList<>();
+        List<CvTerm> terms = rule.getCvTerm();
+        ValidationMessage.MessageTypeEnum level = requirementLevel(rule);
+        if (selected.isEmpty()) {
+            if (level != ValidationMessage.MessageTypeEnum.INFO) {
+                messages.add(message(rule, level, "No parameter found for rule '"
+                    + rule.getId() + "' at '" + rule.getCvElementPath()
+                    + "', expected " + describe(terms, null) + "."));
+            }
+            return messages;
+        }
+        BitSet matchedTerms = new BitSet(terms.size());
+        for (Parameter parameter : selected) {
+            // user parameters never match a term
+            BitSet parameterMatches = parameter.getCvAccession() == null
+                || parameter.getCvAccession().
+                    isEmpty() ? new BitSet() : verdicts.get(ruleSignature,
+                    parameter, () -> matchingTerms(terms, parameter));
+            if (parameterMatches.isEmpty()) {
+                messages.add(message(rule, errorIfTermNotInRule
+                    ? ValidationMessage.MessageTypeEnum.ERROR
+                    : ValidationMessage.MessageTypeEnum.WARN, "Parameter "
+                    + format(parameter) + " at '" + rule.getCvElementPath()
+                    + "' is not allowed by rule '" + rule.getId()
+                    + "', expected " + describe(terms, null) + "."));
+            }
+            matchedTerms.or(parameterMatches);
+        }
+        switch (combinationLogic(rule)) {
+            case "AND":
+                if (matchedTerms.cardinality() < terms.size()) {
+                    BitSet missing = new BitSet(terms.size());
+                    missing.set(0, terms.size());
+                    missing.andNot(matchedTerms);
+                    messages.add(message(rule, level, "Rule '" + rule.getId()
+                        + "' at '" + rule.getCvElementPath()
+                        + "' requires all of its terms, missing " + describe(
+                        terms, missing) + "."));
+                }
+                break;
+            case "XOR":
+                if (matchedTerms.cardinality() != 1) {
+                    messages.add(message(rule, level, "Rule '" + rule.getId()
+                        + "' at '" + rule.getCvElementPath()
+                        + "' requires exactly one of " + describe(terms, null)
+                        + ", found " + (matchedTerms.isEmpty() ? "none"
+                        : describe(terms, matchedTerms)) + "."));
+                }
+                break;
+            default:
+                if (matchedTerms.isEmpty()) {
+                    messages.add(message(rule, level, "Rule '" + rule.getId()
+                        + "' at '" + rule.getCvElementPath()
+                        + "' requires at least one of " + describe(terms, null)
+                        + ", found none."));
+                }
+                break;
+        }
+        return messages;
+    }
+
+    /**
+     * Creates the message for a rule that could not be checked, because the
+     * ontology lookup service was not available.
+     *
+     * @param rule the rule.
+     * @param ex the cause.
+     * @return a warning for the rule.
+     */
+    public static ValidationMessage ontologyUnavailable(CvMappingRule rule,
+        OntologyUnavailableException ex) {
+        ValidationMessage vm = new ValidationMessage();
+        vm.setCategory(ValidationMessage.CategoryEnum.CROSS_CHECK);
+        vm.setCode(rule.getId());
+        vm.setLineNumber(-1l);
+        vm.setMessageType(ValidationMessage.MessageTypeEnum.WARN);
+        vm.setMessage("Ontology unavailable: rule '" + rule.getId()
+            + "' at '" + rule.getCvElementPath() + "' could not be checked. "
+            + ex.getMessage());
+        return vm;
+    }
+
+    private static ValidationMessage message(CvMappingRule rule,
+        ValidationMessage.MessageTypeEnum messageType, String message) {
+        ValidationMessage vm = new ValidationMessage();
+        vm.setCategory(ValidationMessage.CategoryEnum.CROSS_CHECK);
+        vm.setCode(rule.getId());
+        vm.setLineNumber(-1l);
+        vm.setMessageType(messageType);
+        vm.setMessage(message);
+        return vm;
+    }
+
+    /*
+     * Lists the accessions and names of the terms, or only of the selected
+     * ones if selection is not null.
+     */
+    private static String describe(List<CvTerm> terms, BitSet selection) {
+        List<String> described = new ArrayList<>();
+        for (int i = 0; i < terms.size(); i++) {
+            if (selection == null || selection.get(i)) {
+                CvTerm term = terms.get(i);
+                described.add(term.getTermAccession() + " (" + term.
+                    getTermName() + ")" + (term.isAllowChildren()
+                    ? " or a child term" : ""));
+            }
+        }
+        return String.join(", ", described);
+    }
+
+    private static String format(Parameter parameter) {
+        return "[" + Objects.toString(parameter.getCvLabel(), "") + ", "
+            + Objects.toString(parameter.getCvAccession(), "") + ", "
+            + Objects.toString(parameter.getName(), "") + ", "
+            + Objects.toString(parameter.getValue(), "") + "]";
+    }
+
+    private static ValidationMessage.MessageTypeEnum requirementLevel(
+        CvMappingRule rule) {
+        String level = rule.getRequirementLevel() == null ? "MAY" : rule.
+            getRequirementLevel().
+            toUpperCase();
+        switch (level) {
+            case "MUST":
+                return ValidationMessage.MessageTypeEnum.ERROR;
+            case "SHOULD":
+                return ValidationMessage.MessageTypeEnum.WARN;
+            default:
+                return ValidationMessage.MessageTypeEnum.INFO;
+        }
+    }
+
+    private BitSet matchingTerms(List<CvTerm> terms, Parameter parameter) {
+        BitSet matches = new BitSet(terms.size());
+        for (int i = 0; i < terms.size(); i++) {
+            if (matches(terms.get(i), parameter)) {
+                matches.set(i);
+            }
+        }
+        return matches;
+    }
+
+    private boolean matches(CvTerm term, Parameter parameter) {
+        boolean sameAccession = parameter.getCvAccession().
+            equalsIgnoreCase(term.getTermAccession());
+        if (sameAccession) {
+            return term.isUseTerm();
+        }
+        if (!term.isAllowChildren()) {
+            return false;
+        }
+        Optional<TermDescendants> descendants = allowedTermSets.get(term.
+            getTermAccession());
+        if (descendants.isPresent()) {
+            if (descendants.get().
+                getAccessions().
+                contains(parameter.getCvAccession())) {
+                return true;
+            }
+            if (descendants.get().
+                isComplete()) {
+                return false;
+            }
+        }
+        ParameterComparisonResult result = lookupService.isChildOfOrSame(
+            CvMappingUtils.asParameter(term), parameter);
+        return result == ParameterComparisonResult.CHILD_OF;
+    }
+
+    private static String combinationLogic(CvMappingRule rule) {
+        return rule.getCvTermsCombinationLogic() == null ? "OR" : rule.
+            getCvTermsCombinationLogic().
+            toUpperCase();
+    }
+}
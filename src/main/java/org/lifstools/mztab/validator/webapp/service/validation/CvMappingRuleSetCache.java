@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.validation;
+
+import info.psidev.cvmapping.CvMapping;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Provides parsed CvMapping rule sets. The default rule set is unmarshalled
+ * once at startup and shared by all validations, user supplied mapping files
+ * are kept in a bounded, least recently used cache keyed by the SHA-256 hash
+ * of their content.
+ *
+ * Cached rule sets are shared between threads and must be treated as read
+ * only.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Slf4j
+@Service
+public class CvMappingRuleSetCache {
+
+    public static final String DEFAULT_RULE_SET_ID = "default";
+    public static final String DEFAULT_RULE_SET_RESOURCE = "/mappings/mzTab-M-mapping.xml";
+
+    private final JAXBContext jaxbContext;
+    private final CvMapping defaultRuleSet;
+    private final int maxEntries;
+    private final Map<String, CvMapping> ruleSets;
+
+    @Autowired
+    public CvMappingRuleSetCache(
+        @Value("${validation.ruleSetCache.maxEntries:20}") int maxEntries) throws JAXBException, IOException {
+        this.jaxbContext = JAXBContext.newInstance(CvMapping.class);
+        try (InputStream is = new ClassPathResource(DEFAULT_RULE_SET_RESOURCE).
+            getInputStream()) {
+            this.defaultRuleSet = (CvMapping) jaxbContext.createUnmarshaller().
+                unmarshal(is);
+        }
+        this.maxEntries = maxEntries;
+        this.ruleSets = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, CvMapping> eldest) {
+                return size() > CvMappingRuleSetCache.this.maxEntries;
+            }
+        };
+    }
+
+    public CvMapping getDefault() {
+        return defaultRuleSet;
+    }
+
+    /**
+     * Returns the rule set with the given id, unmarshalling the mapping file
+     * if it is not cached yet.
+     *
+     * @param ruleSetId {@link #DEFAULT_RULE_SET_ID} or the content hash of
+     * the mapping file.
+     * @param mappingFile the mapping file, ignored for the default rule set.
+     * @return the parsed rule set.
+     * @throws IOException if the mapping file can not be read or parsed.
+     */
+    public CvMapping get(String ruleSetId, Path mappingFile) throws IOException {
+        if (DEFAULT_RULE_SET_ID.equals(ruleSetId)) {
+            return defaultRuleSet;
+        }
+        synchronized (ruleSets) {
+            CvMapping ruleSet = ruleSets.get(ruleSetId);
+            if (ruleSet != null) {
+                return ruleSet;
+            }
+        }
+        log.debug("Parsing rule set {} from {}", ruleSetId, mappingFile);
+        CvMapping ruleSet;
+        try (InputStream is = Files.newInputStream(mappingFile)) {
+            // unmarshallers are not thread safe, the context is
+            ruleSet = (CvMapping) jaxbContext.createUnmarshaller().unmarshal(
+                is);
+        } catch (JAXBException ex) {
+            throw new IOException("Could not parse mapping file " + mappingFile.
+                getFileName(), ex);
+        }
+        if (maxEntries > 0) {
+            synchronized (ruleSets) {
+                ruleSets.putIfAbsent(ruleSetId, ruleSet);
+            }
+        }
+        return ruleSet;
+    }
+
+    public int size() {
+        synchronized (ruleSets) {
+            return ruleSets.size();
+        }
+    }
+}
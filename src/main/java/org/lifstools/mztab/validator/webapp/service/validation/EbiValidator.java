@@ -15,6 +15,10 @@
  */
 package org.lifstools.mztab.validator.webapp.service.validation;
 
+import info.psidev.cvmapping.CvMapping;
+import org.lifstools.mztab.validator.webapp.domain.PreviewTable;
+import org.lifstools.mztab.validator.webapp.domain.ValidationProgress;
+import org.lifstools.mztab.validator.webapp.domain.ValidationReport;
 import org.lifstools.mztab2.model.ValidationMessage;
 import java.io.IOException;
 import java.nio.file.Path;
@@ -38,9 +42,23 @@ import uk.ac.ebi.pride.jmztab.utils.errors.MZTabException;
  */
 public class EbiValidator implements WebValidator {
 
+    private final ValidationTask task;
+
+    public EbiValidator() {
+        this(null);
+    }
+
+    /**
+     * Creates a validator that stops before each parser pass and before the
+     * report is assembled, once the task has been cancelled.
+     */
+    public EbiValidator(ValidationTask task) {
+        this.task = task;
+    }
+
     @Override
     public List<ValidationMessage> validate(Path filepath,
-        String validationLevel, int maxErrors, boolean checkCvMapping, Path validationFile) throws IllegalStateException, IOException {
+        String validationLevel, int maxErrors, boolean checkCvMapping, CvMapping ruleSet) throws IllegalStateException, IOException {
         SortedSet<ValidationMessage> results = new TreeSet<>((vm1,
             vm2) ->
         {
@@ -65,117 +83,148 @@ public class EbiValidator implements WebValidator {
             return lineNumber;
         });
         MZTabErrorType.Level level = MZTabErrorType.findLevel(validationLevel);
-        switch (level) {
-            case Info:
-                applyParserForLevel(results, filepath,
-                    MZTabErrorType.Level.Info.name(), maxErrors);
-                applyParserForLevel(results, filepath,
-                    MZTabErrorType.Level.Warn.name(), maxErrors);
-                applyParserForLevel(results, filepath,
-                    MZTabErrorType.Level.Error.name(), maxErrors);
-                break;
-            case Warn:
-                applyParserForLevel(results, filepath,
-                    MZTabErrorType.Level.Warn.name(), maxErrors);
-                applyParserForLevel(results, filepath,
-                    MZTabErrorType.Level.Error.name(), maxErrors);
+        if (level == null) {
+            throw new IllegalStateException(
+                "Level '" + validationLevel + "' is not supported!");
+        }
+        // a single parse at the most verbose requested level reports all
+        // messages of that level and above, Warn and Error are subsets of it
+        boolean capped = applyParserForLevel(results, filepath, level,
+            maxErrors);
+        if (capped && level != MZTabErrorType.Level.Error) {
+            // lower level messages used up the parser's cap, errors after
+            // that point are only found by a dedicated error pass
+            applyParserForLevel(results, filepath, MZTabErrorType.Level.Error,
+                maxErrors);
+        }
+        return limit(results, maxErrors);
+    }
+
+    /**
+     * Returns at most maxErrors messages in line order. Error messages are
+     * kept first, the remaining places are filled with the other messages.
+     */
+    private static List<ValidationMessage> limit(
+        SortedSet<ValidationMessage> results, int maxErrors) {
+        int max = Math.max(0, maxErrors);
+        List<ValidationMessage> validationResults = new ArrayList<>(Math.min(
+            results.size(), max));
+        for (ValidationMessage vm : results) {
+            if (validationResults.size() >= max) {
                 break;
-            case Error:
-                applyParserForLevel(results, filepath,
-                    MZTabErrorType.Level.Error.name(), maxErrors);
+            }
+            if (vm.getMessageType() == ValidationMessage.MessageTypeEnum.ERROR) {
+                validationResults.add(vm);
+            }
+        }
+        for (ValidationMessage vm : results) {
+            if (validationResults.size() >= max) {
                 break;
-            default:
-                throw new IllegalStateException(
-                    "State '" + level + "' is not handled in switch/case statement!");
+            }
+            if (vm.getMessageType() != ValidationMessage.MessageTypeEnum.ERROR) {
+                validationResults.add(vm);
+            }
         }
+        validationResults.sort(results.comparator());
+        return validationResults;
+    }
 
-        List<ValidationMessage> validationResults = new ArrayList<>(results.
-            size());
-        validationResults.addAll(results);
-        return validationResults.subList(0, Math.min(
-            validationResults.size(), maxErrors));
+    @Override
+    public ValidationReport validateAndParse(Path filepath,
+        String validationLevel, int maxErrors, boolean checkCvMapping,
+        CvMapping ruleSet) throws IllegalStateException, IOException {
+        // no preview model is available for mzTab 1.0, so skip the extra parse
+        ValidationReport report = new ValidationReport();
+        report.setMessages(validate(filepath, validationLevel, maxErrors,
+            checkCvMapping, ruleSet));
+        checkCancelled();
+        return report;
     }
 
-    private void applyParserForLevel(SortedSet<ValidationMessage> results,
+    /**
+     * Parses the file at the given level and adds the messages of that level
+     * and above to the results.
+     *
+     * @return true if the parser stopped at maxErrors messages.
+     */
+    private boolean applyParserForLevel(SortedSet<ValidationMessage> results,
         Path filepath,
-        String validationLevel, int maxErrors) throws IllegalStateException, IOException {
+        MZTabErrorType.Level level, int maxErrors) throws IllegalStateException, IOException {
+        // the parser reads the file itself, a cancelled validation stops
+        // before the next pass
+        checkCancelled();
+        stage(ValidationProgress.Stage.PARSING);
         try {
             MZTabFileParser parser = new MZTabFileParser(filepath.toFile(),
-                System.out, MZTabErrorType.findLevel(validationLevel), maxErrors);
+                System.out, level, maxErrors);
             MZTabErrorList errorList = parser.getErrorList();
             for (MZTabError error : errorList.getErrorList()) {
-                ValidationMessage.MessageTypeEnum level = ValidationMessage.MessageTypeEnum.INFO;
-                switch (error.getType().
-                    getLevel()) {
-                    case Error:
-                        level = ValidationMessage.MessageTypeEnum.ERROR;
-                        break;
-                    case Info:
-                        level = ValidationMessage.MessageTypeEnum.INFO;
-                        break;
-                    case Warn:
-                        level = ValidationMessage.MessageTypeEnum.WARN;
-                        break;
-                    default:
-                        throw new IllegalStateException("State '" + error.
-                            getType().
-                            getLevel() + "' is not handled in switch/case statement!");
+                if (error.getType().
+                    getLevel().
+                    compareTo(level) >= 0) {
+                    results.add(toValidationMessage(error));
                 }
-                ValidationMessage vr = new ValidationMessage().lineNumber(Long.
-                    valueOf(error.getLineNumber())).
-                    messageType(level).
-                    message(error.getMessage()).
-                    code(error.toString());
-                Logger.getLogger(MzTabValidationService.class.getName()).
-                    info(vr.toString());
-                results.add(vr);
             }
+            return errorList.size() >= maxErrors;
         } catch (IOException ex) {
             if (ex.getCause() instanceof MZTabException) {
                 MZTabException mex = (MZTabException) ex.getCause();
-                ValidationMessage.MessageTypeEnum level;
-                switch (mex.getError().
-                    getType().
-                    getLevel()) {
-                    case Error:
-                        level = ValidationMessage.MessageTypeEnum.ERROR;
-                        break;
-                    case Info:
-                        level = ValidationMessage.MessageTypeEnum.INFO;
-                        break;
-                    case Warn:
-                        level = ValidationMessage.MessageTypeEnum.WARN;
-                        break;
-                    default:
-                        throw new IllegalStateException("State '" + mex.
-                            getError().
-                            getType().
-                            getLevel() + "' is not handled in switch/case statement!");
-                }
-                ValidationMessage vr = new ValidationMessage().lineNumber(Long.
-                    valueOf(mex.getError().
-                        getLineNumber())).
-                    messageType(level).
-                    message(mex.getError().
-                        getMessage()).
-                    code(mex.getError().
-                        toString());
-                Logger.getLogger(MzTabValidationService.class.getName()).
-                    info(vr.toString());
-                results.add(vr);
+                results.add(toValidationMessage(mex.getError()));
             }
         }
+        return false;
+    }
+
+    private void checkCancelled() {
+        if (task != null) {
+            task.checkCancelled();
+        }
+    }
+
+    private void stage(ValidationProgress.Stage stage) {
+        if (task != null) {
+            task.getProgress().
+                setStage(stage);
+        }
+    }
+
+    private ValidationMessage toValidationMessage(MZTabError error) throws IllegalStateException {
+        ValidationMessage.MessageTypeEnum level;
+        switch (error.getType().
+            getLevel()) {
+            case Error:
+                level = ValidationMessage.MessageTypeEnum.ERROR;
+                break;
+            case Info:
+                level = ValidationMessage.MessageTypeEnum.INFO;
+                break;
+            case Warn:
+                level = ValidationMessage.MessageTypeEnum.WARN;
+                break;
+            default:
+                throw new IllegalStateException("State '" + error.
+                    getType().
+                    getLevel() + "' is not handled in switch/case statement!");
+        }
+        ValidationMessage vr = new ValidationMessage().lineNumber(Long.
+            valueOf(error.getLineNumber())).
+            messageType(level).
+            message(error.getMessage()).
+            code(error.toString());
+        Logger.getLogger(MzTabValidationService.class.getName()).
+            info(vr.toString());
+        return vr;
     }
 
     @Override
-    public Map<String, List<Map<String, String>>> parse(Path filepath,
+    public Map<String, PreviewTable> parse(Path filepath,
         String validationLevel,
         int maxErrors) throws IOException {
         MZTabFileParser parser = new MZTabFileParser(filepath.toFile(),
             System.out, MZTabErrorType.findLevel(validationLevel), maxErrors);
         MZTabFile mzTabFile = parser.getMZTabFile();
         int lineNumber = 1;
-        Map<String, List<Map<String, String>>> mzTabLines = new LinkedHashMap<>();
+        Map<String, PreviewTable> mzTabLines = new LinkedHashMap<>();
 //        if (mzTabFile == null) {
         return mzTabLines;
 //        }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.validation;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.lifstools.mztab.validator.webapp.domain.ValidationProgress;
+import org.lifstools.mztab.validator.webapp.domain.ValidationReport;
+import org.springframework.stereotype.Service;
+
+/**
+ * Coalesces concurrent validations of the same input. The first request for
+ * a {@link ValidationCacheKey} starts the validation, later requests for
+ * the same key attach to the running {@link ValidationTask} and receive its
+ * report. All requests share the {@link ValidationProgress} of the running
+ * validation. A session that cancels stops waiting, the validation is only
+ * cancelled once no session is waiting for it anymore.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Slf4j
+@Service
+public class InFlightValidations {
+
+    private final ConcurrentMap<ValidationCacheKey, ValidationTask> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the future report of the running validation for the given key,
+     * or starts a new validation with the given function.
+     *
+     * @param key the validation key.
+     * @param sessionId the session waiting for the report.
+     * @param validation starts the validation of the given task, called at
+     * most once per running validation.
+     * @return the future report for the session.
+     */
+    public CompletableFuture<ValidationReport> attachOrStart(
+        ValidationCacheKey key, UUID sessionId,
+        Function<ValidationTask, CompletableFuture<ValidationReport>> validation) {
+        while (true) {
+            ValidationTask created = new ValidationTask(key);
+            ValidationTask running = inFlight.putIfAbsent(key, created);
+            if (running == null) {
+                CompletableFuture<ValidationReport> waiter = created.attach(
+                    sessionId);
+                start(created, validation);
+                return waiter;
+            }
+            CompletableFuture<ValidationReport> waiter = running.attach(
+                sessionId);
+            if (waiter != null) {
+                log.debug("Attaching to running validation for {}", key);
+                return waiter;
+            }
+            // cancelled, but not yet removed
+            inFlight.remove(key, running);
+        }
+    }
+
+    /**
+     * Returns the progress of the running validation for the given key.
+     *
+     * @param key the validation key.
+     * @return the progress, or empty if no validation is running.
+     */
+    public Optional<ValidationProgress> getProgress(ValidationCacheKey key) {
+        return Optional.ofNullable(inFlight.get(key)).
+            map(ValidationTask::getProgress);
+    }
+
+    /**
+     * Stops waiting for the validations of the session. Validations that no
+     * other session is waiting for are cancelled.
+     *
+     * @param sessionId the session id.
+     * @return true if the session was waiting for a validation.
+     */
+    public boolean cancel(UUID sessionId) {
+        boolean detached = false;
+        for (ValidationTask task : inFlight.values()) {
+            if (task.detach(sessionId)) {
+                detached = true;
+                if (task.isCancelled()) {
+                    inFlight.remove(task.getKey(), task);
+                }
+            }
+        }
+        return detached;
+    }
+
+    private void start(ValidationTask task,
+        Function<ValidationTask, CompletableFuture<ValidationReport>> validation) {
+        CompletableFuture<ValidationReport> started;
+        try {
+            started = validation.apply(task);
+        } catch (RuntimeException ex) {
+            started = CompletableFuture.failedFuture(ex);
+        }
+        started.whenComplete((report, ex) -> {
+            // later requests are served by the result cache
+            inFlight.remove(task.getKey(), task);
+            task.complete(report, ex);
+        });
+    }
+}
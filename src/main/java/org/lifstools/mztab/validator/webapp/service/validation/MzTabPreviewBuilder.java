@@ -0,0 +1,291 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.validation;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.lifstools.mztab.validator.webapp.domain.PreviewTable;
+import org.lifstools.mztab2.io.MzTabWriterDefaults;
+import org.lifstools.mztab2.model.Metadata;
+import org.lifstools.mztab2.model.MzTab;
+import uk.ac.ebi.pride.jmztab2.model.MZTabConstants;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabException;
+
+/**
+ * Projects the sections of a parsed {@link MzTab} object into
+ * {@link PreviewTable}s. Cells are formatted by the serializers of the
+ * jmzTab-m writer mappings, but the serializers write into a token buffer
+ * instead of text, so that the cells are taken from the written fields
+ * without splitting lines. Only the first <code>maxRows</code> rows of each
+ * table section are serialized and materialized.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Slf4j
+public class MzTabPreviewBuilder {
+
+    public static final int DEFAULT_MAX_ROWS = 1000;
+
+    static final List<String> METADATA_COLUMNS = List.of("PREFIX", "KEY",
+        "VALUE");
+
+    private static final ObjectReader LINE_READER = new ObjectMapper().
+        readerFor(JsonNode.class);
+
+    private final int maxRows;
+
+    public MzTabPreviewBuilder(int maxRows) {
+        this.maxRows = Math.max(0, maxRows);
+    }
+
+    /**
+     * Creates the preview tables for the META, SUMMARY, FEATURE and EVIDENCE
+     * sections.
+     *
+     * @param mzTab the parsed mzTab file.
+     * @return the preview tables, keyed by section name.
+     */
+    public Map<String, PreviewTable> build(MzTab mzTab) {
+        Map<String, PreviewTable> tables = new LinkedHashMap<>();
+        Metadata metadata = mzTab.getMetadata();
+        if (metadata != null && metadata.getMzTabVersion() == null) {
+            //set default version if not set
+            metadata.mzTabVersion(MZTabConstants.VERSION_MZTAB_M);
+        }
+        MzTabWriterDefaults writerDefaults = new MzTabWriterDefaults();
+        LineCounter lineCounter = new LineCounter();
+        tables.put("META", metadata(writerDefaults, metadata, lineCounter));
+        tables.put("SUMMARY", summary(writerDefaults, mzTab, lineCounter));
+        tables.put("FEATURE", features(writerDefaults, mzTab, lineCounter));
+        tables.put("EVIDENCE", evidence(writerDefaults, mzTab, lineCounter));
+        return tables;
+    }
+
+    private PreviewTable metadata(MzTabWriterDefaults writerDefaults,
+        Metadata metadata, LineCounter lineCounter) {
+        if (metadata == null) {
+            return PreviewTable.EMPTY;
+        }
+        CsvMapper mapper = writerDefaults.metadataMapper();
+        try {
+            return metadataTable(mapper, writerDefaults.metaDataSchema(mapper),
+                metadata, lineCounter);
+        } catch (IOException ex) {
+            log.error("Could not serialize metadata section:", ex);
+            return PreviewTable.EMPTY;
+        }
+    }
+
+    private PreviewTable summary(MzTabWriterDefaults writerDefaults,
+        MzTab mzTab, LineCounter lineCounter) {
+        CsvMapper mapper = writerDefaults.smallMoleculeSummaryMapper();
+        try {
+            return table(mapper, writerDefaults.smallMoleculeSummarySchema(
+                mapper, mzTab), nullToEmpty(mzTab.getSmallMoleculeSummary()),
+                lineCounter);
+        } catch (IOException | MZTabException ex) {
+            log.error("Could not serialize small molecule summary section:",
+                ex);
+            return PreviewTable.EMPTY;
+        }
+    }
+
+    private PreviewTable features(MzTabWriterDefaults writerDefaults,
+        MzTab mzTab, LineCounter lineCounter) {
+        CsvMapper mapper = writerDefaults.smallMoleculeFeatureMapper();
+        try {
+            return table(mapper, writerDefaults.smallMoleculeFeatureSchema(
+                mapper, mzTab), nullToEmpty(mzTab.getSmallMoleculeFeature()),
+                lineCounter);
+        } catch (IOException | MZTabException ex) {
+            log.error("Could not serialize small molecule feature section:",
+                ex);
+            return PreviewTable.EMPTY;
+        }
+    }
+
+    private PreviewTable evidence(MzTabWriterDefaults writerDefaults,
+        MzTab mzTab, LineCounter lineCounter) {
+        CsvMapper mapper = writerDefaults.smallMoleculeEvidenceMapper();
+        try {
+            return table(mapper, writerDefaults.smallMoleculeEvidenceSchema(
+                mapper, mzTab), nullToEmpty(mzTab.getSmallMoleculeEvidence()),
+                lineCounter);
+        } catch (IOException | MZTabException ex) {
+            log.error("Could not serialize small molecule evidence section:",
+                ex);
+            return PreviewTable.EMPTY;
+        }
+    }
+
+    /*
+     * The metadata serializer writes one line per metadata item, each line
+     * has the fields prefix, key and value.
+     */
+    PreviewTable metadataTable(CsvMapper mapper, CsvSchema schema,
+        Object metadata, LineCounter lineCounter) throws IOException {
+        List<JsonNode> lines = lines(mapper, metadata);
+        PreviewTable.Builder table = new PreviewTable.Builder(
+            METADATA_COLUMNS);
+        for (JsonNode line : lines) {
+            int lineNumber = lineCounter.next();
+            if (table.size() < maxRows) {
+                table.addRow(lineNumber, cells(line, METADATA_COLUMNS.size(),
+                    schema));
+            }
+        }
+        return table.build(lines.size());
+    }
+
+    /*
+     * Serializes the first maxRows items with the section's writer mapping,
+     * the columns are those of the schema, which is derived from the complete
+     * file, so that they match the columns of the written mzTab file.
+     */
+    PreviewTable table(CsvMapper mapper, CsvSchema schema, List<?> items,
+        LineCounter lineCounter) throws IOException {
+        if (items.isEmpty()) {
+            return PreviewTable.EMPTY;
+        }
+        List<String> columns = new ArrayList<>(schema.size());
+        for (CsvSchema.Column column : schema) {
+            columns.add(column.getName());
+        }
+        //empty line before and header line of the section
+        lineCounter.next();
+        lineCounter.next();
+        PreviewTable.Builder table = new PreviewTable.Builder(columns);
+        if (!columns.isEmpty()) {
+            for (Object item : items.subList(0, Math.min(maxRows, items.
+                size()))) {
+                for (JsonNode row : lines(mapper, item)) {
+                    table.addRow(lineCounter.next(), cells(row, columns,
+                        schema));
+                }
+            }
+        }
+        lineCounter.skip(items.size() - table.size());
+        return table.build(items.size());
+    }
+
+    /*
+     * Runs the mapping's serializers into a token buffer and reads back the
+     * written lines, one JSON node per line.
+     */
+    private static List<JsonNode> lines(CsvMapper mapper, Object item) throws IOException {
+        TokenBuffer buffer = new TokenBuffer(mapper, false);
+        mapper.writeValue(buffer, item);
+        List<JsonNode> lines = new ArrayList<>();
+        try (JsonParser parser = buffer.asParser()) {
+            MappingIterator<JsonNode> values = LINE_READER.readValues(parser);
+            while (values.hasNextValue()) {
+                lines.add(values.nextValue());
+            }
+        }
+        return lines;
+    }
+
+    /*
+     * Takes the cells of a table row by column name, columns that have not
+     * been written are empty.
+     */
+    private static String[] cells(JsonNode row, List<String> columns,
+        CsvSchema schema) {
+        if (!row.isObject()) {
+            return cells(row, columns.size(), schema);
+        }
+        String[] cells = new String[columns.size()];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = cell(row.get(columns.get(i)), schema);
+        }
+        return cells;
+    }
+
+    /*
+     * Takes the cells of a line in the order they were written, surplus
+     * fields are appended to the last cell.
+     */
+    private static String[] cells(JsonNode line, int count, CsvSchema schema) {
+        String[] cells = new String[count];
+        Arrays.fill(cells, "");
+        Iterator<JsonNode> values = line.elements();
+        for (int i = 0; values.hasNext(); i++) {
+            String value = cell(values.next(), schema);
+            if (i < count) {
+                cells[i] = value;
+            } else {
+                cells[count - 1] += MZTabConstants.TAB_STRING + value;
+            }
+        }
+        return cells;
+    }
+
+    /*
+     * Formats a written value as the CSV generator would, without quoting.
+     */
+    private static String cell(JsonNode value, CsvSchema schema) {
+        if (value == null) {
+            return "";
+        }
+        if (value.isNull()) {
+            String nullValue = schema.getNullValueString();
+            return nullValue == null ? "" : nullValue;
+        }
+        if (value.isArray()) {
+            List<String> elements = new ArrayList<>(value.size());
+            value.forEach((element) -> elements.add(cell(element, schema)));
+            return String.join(schema.getArrayElementSeparator(), elements);
+        }
+        return value.isValueNode() ? value.asText() : value.toString();
+    }
+
+    private static <T> List<T> nullToEmpty(List<T> list) {
+        return list == null ? Collections.emptyList() : list;
+    }
+
+    /*
+     * Approximates the line numbers of the written mzTab file, assuming one
+     * line per metadata item and table row, an empty line after each section
+     * and one header line per table.
+     */
+    static class LineCounter {
+
+        private int lineNumber = 0;
+
+        int next() {
+            return ++lineNumber;
+        }
+
+        void skip(int lines) {
+            lineNumber += lines;
+        }
+    }
+}
@@ -15,32 +15,50 @@
  */
 package org.lifstools.mztab.validator.webapp.service.validation;
 
+import org.lifstools.mztab.validator.webapp.domain.PreviewTable;
 import org.lifstools.mztab.validator.webapp.domain.ToolResult;
 import org.lifstools.mztab.validator.webapp.domain.UserSessionFile;
 import org.lifstools.mztab.validator.webapp.domain.ValidationLevel;
 import static org.lifstools.mztab.validator.webapp.domain.ValidationLevel.ERROR;
 import static org.lifstools.mztab.validator.webapp.domain.ValidationLevel.WARN;
+import org.lifstools.mztab.validator.webapp.domain.ValidationProgress;
+import org.lifstools.mztab.validator.webapp.domain.ValidationReport;
 import org.lifstools.mztab.validator.webapp.domain.ValidationResult;
+import org.lifstools.mztab.validator.webapp.domain.ValidationResultView;
+import org.lifstools.mztab.validator.webapp.domain.ValidationStatistics;
 import org.lifstools.mztab.validator.webapp.service.AnalyticsTracker;
 import org.lifstools.mztab.validator.webapp.service.StorageService;
 import org.lifstools.mztab.validator.webapp.service.ToolResultService;
 import org.lifstools.mztab.validator.webapp.service.ValidationService;
-import org.lifstools.mztab2.cvmapping.CvParameterLookupService;
+import org.lifstools.mztab.validator.webapp.service.execution.FairValidationScheduler;
+import org.lifstools.mztab.validator.webapp.service.execution.ValidationStatusEvent;
+import org.lifstools.mztab.validator.webapp.service.storage.SessionFilesDeletedEvent;
 import org.lifstools.mztab2.model.ValidationMessage;
+import info.psidev.cvmapping.CvMapping;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabException;
 
@@ -54,16 +72,36 @@ public class MzTabValidationService implements ValidationService {
     private final StorageService storageService;
     private final AnalyticsTracker tracker;
     private final ToolResultService resultService;
-    private final CvParameterLookupService lookupService;
+    private final SemanticValidationEngine semanticValidationEngine;
+    private final ValidationResultCache resultCache;
+    private final CvMappingRuleSetCache ruleSetCache;
+    private final InFlightValidations inFlightValidations;
+    private final FairValidationScheduler toolExecutor;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int maxPreviewRows;
+    private final Set<ParserReadProbe> readProbes = ConcurrentHashMap.
+        newKeySet();
 
     @Autowired
     public MzTabValidationService(StorageService storageService,
         AnalyticsTracker tracker, ToolResultService resultService,
-        CvParameterLookupService lookupService) {
+        SemanticValidationEngine semanticValidationEngine,
+        ValidationResultCache resultCache,
+        CvMappingRuleSetCache ruleSetCache,
+        InFlightValidations inFlightValidations,
+        @Qualifier("toolThreadPoolTaskExecutor") FairValidationScheduler toolExecutor,
+        ApplicationEventPublisher eventPublisher,
+        @Value("${preview.maxRows:1000}") int maxPreviewRows) {
         this.storageService = storageService;
         this.tracker = tracker;
         this.resultService = resultService;
-        this.lookupService = lookupService;
+        this.semanticValidationEngine = semanticValidationEngine;
+        this.resultCache = resultCache;
+        this.ruleSetCache = ruleSetCache;
+        this.inFlightValidations = inFlightValidations;
+        this.toolExecutor = toolExecutor;
+        this.eventPublisher = eventPublisher;
+        this.maxPreviewRows = maxPreviewRows;
     }
 
     @Override
@@ -71,6 +109,15 @@ public class MzTabValidationService implements ValidationService {
         UserSessionFile userSessionFile, int maxErrors,
         ValidationLevel validationLevel, boolean checkCvMapping,
         UserSessionFile mappingFile) {
+        return validate(mzTabVersion, userSessionFile, maxErrors,
+            validationLevel, checkCvMapping, mappingFile, null);
+    }
+
+    @Override
+    public List<ValidationMessage> validate(MzTabVersion mzTabVersion,
+        UserSessionFile userSessionFile, int maxErrors,
+        ValidationLevel validationLevel, boolean checkCvMapping,
+        UserSessionFile mappingFile, String client) {
         tracker.started(userSessionFile.getSessionId(), "validation", "init");
         Path filepath = storageService.load(userSessionFile,
             StorageService.SLOT.MZTABFILE);
@@ -78,9 +125,10 @@ public class MzTabValidationService implements ValidationService {
         try {
             List<ValidationMessage> validationResults = new ArrayList<>();
             validationResults.addAll(
-                validate(mzTabVersion, filepath, validationLevel,
-                    maxErrors, checkCvMapping, storageService.load(
-                        mappingFile, StorageService.SLOT.MAPPINGFILE)));
+                awaitReport(validateShared(mzTabVersion, userSessionFile,
+                    filepath, validationLevel, maxErrors, checkCvMapping,
+                    mappingFile, client, null)).
+                    getAllMessages());
             tracker.stopped(userSessionFile.getSessionId(), "validation",
                 "success");
             return validationResults;
@@ -100,7 +148,7 @@ public class MzTabValidationService implements ValidationService {
     }
 
     @Override
-    public Map<String, List<Map<String, String>>> parse(
+    public Map<String, PreviewTable> parse(
         MzTabVersion mzTabVersion,
         UserSessionFile userSessionFile, int maxErrors,
         ValidationLevel validationLevel) {
@@ -109,7 +157,7 @@ public class MzTabValidationService implements ValidationService {
             StorageService.SLOT.MZTABFILE);
 
         try {
-            Map<String, List<Map<String, String>>> lines = parse(mzTabVersion,
+            Map<String, PreviewTable> lines = parse(mzTabVersion,
                 filepath, validationLevel,
                 maxErrors);
             tracker.stopped(userSessionFile.getSessionId(), "parse", "success");
@@ -122,7 +170,7 @@ public class MzTabValidationService implements ValidationService {
         return Collections.emptyMap();
     }
 
-    private Map<String, List<Map<String, String>>> parse(
+    private Map<String, PreviewTable> parse(
         MzTabVersion mzTabVersion,
         Path filepath,
         ValidationLevel validationLevel, int maxErrors) throws IllegalStateException, IOException {
@@ -132,7 +180,7 @@ public class MzTabValidationService implements ValidationService {
                     name(),
                     maxErrors);
             case MZTAB_2_0:
-                return new MzTabMValidator(lookupService).parse(filepath,
+                return new MzTabMValidator(semanticValidationEngine, maxPreviewRows).parse(filepath,
                     validationLevel.
                         name(),
                     maxErrors);
@@ -142,39 +190,120 @@ public class MzTabValidationService implements ValidationService {
         }
     }
 
-    private List<ValidationMessage> validate(MzTabVersion mzTabVersion,
-        Path filepath,
-        ValidationLevel validationLevel, int maxErrors, boolean checkCvMapping,
-        Path mappingFile) throws IllegalStateException, IOException {
-        if (checkCvMapping) {
-            Logger.getLogger(MzTabValidationService.class.getName()).
-                log(java.util.logging.Level.INFO,
-                    "Running validation on file {0} for mzTab version={1}, validationLevel={2}, maxErrors={3}, and mapping file={4}",
-                    new Object[]{filepath, mzTabVersion, validationLevel,
-                        maxErrors, mappingFile});
+    private static ValidationReport awaitReport(
+        CompletableFuture<ValidationReport> report) throws IOException {
+        try {
+            return report.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
 
-        } else {
-            Logger.getLogger(MzTabValidationService.class.getName()).
-                log(java.util.logging.Level.INFO,
-                    "Running validation on file {0} for mzTab version={1}, validationLevel={2}, maxErrors={3}",
-                    new Object[]{filepath, mzTabVersion, validationLevel,
-                        maxErrors});
+    /**
+     * Validates the file on the tool executor, unless an identical
+     * validation is cached or already running, in which case its report is
+     * shared. A null mapping file selects the default rule set, a null
+     * client the session of the file.
+     */
+    private CompletableFuture<ValidationReport> validateShared(
+        MzTabVersion mzTabVersion, UserSessionFile userSessionFile,
+        Path filepath, ValidationLevel validationLevel, int maxErrors,
+        boolean checkCvMapping, UserSessionFile mappingFile, String client,
+        ToolResult status) throws IOException {
+        String ruleSetId = CvMappingRuleSetCache.DEFAULT_RULE_SET_ID;
+        Path mappingFilePath = null;
+        if (mappingFile != null) {
+            mappingFilePath = storageService.load(mappingFile,
+                StorageService.SLOT.MAPPINGFILE);
+            if (!mappingFilePath.toFile().exists()) {
+                throw new IOException("Semantic validation file " + mappingFilePath + " does not exist!");
+            }
+            ruleSetId = storageService.getContentHash(mappingFile,
+                StorageService.SLOT.MAPPINGFILE);
         }
-        switch (mzTabVersion) {
-            case MZTAB_1_0:
-                return new EbiValidator().validate(filepath, validationLevel.
-                    name(),
-                    maxErrors, checkCvMapping, mappingFile);
-            case MZTAB_2_0:
-                return new MzTabMValidator(lookupService).validate(filepath,
-                    validationLevel.
-                        name(),
-                    maxErrors, checkCvMapping, mappingFile);
-            default:
-                throw new IllegalStateException(
-                    "Unsupported mzTab version: " + mzTabVersion.toString());
+        ValidationCacheKey cacheKey = new ValidationCacheKey(
+            storageService.getContentHash(userSessionFile,
+                StorageService.SLOT.MZTABFILE), mzTabVersion,
+            validationLevel, maxErrors, checkCvMapping, ruleSetId);
+        Optional<ValidationReport> cachedReport = resultCache.get(cacheKey);
+        if (cachedReport.isPresent()) {
+            return CompletableFuture.completedFuture(cachedReport.get());
+        }
+        Path ruleSetPath = mappingFilePath;
+        // validations of one browser session or API client share their turn
+        String turn = client == null ? userSessionFile.getSessionId().
+            toString() : client;
+        long cost = toolExecutor.estimateCost(Files.size(filepath),
+            checkCvMapping);
+        CompletableFuture<ValidationReport> shared = inFlightValidations.
+            attachOrStart(cacheKey, userSessionFile.getSessionId(), (task) -> {
+                return task.submit(toolExecutor, turn, cost, () -> {
+                    ValidationReport report = validateAndParse(mzTabVersion,
+                        filepath, validationLevel, maxErrors, checkCvMapping,
+                        cacheKey.getRuleSetId(), ruleSetPath, task);
+                    // a cancelled validation may have skipped rules
+                    task.checkCancelled();
+                    if (report.isComplete()) {
+                        resultCache.put(cacheKey, report);
+                    }
+                    return report;
+                });
+            });
+        if (status != null) {
+            inFlightValidations.getProgress(cacheKey).
+                ifPresent(status::setValidationProgress);
         }
+        return shared;
+    }
 
+    private ValidationReport validateAndParse(MzTabVersion mzTabVersion,
+        Path filepath,
+        ValidationLevel validationLevel, int maxErrors, boolean checkCvMapping,
+        String ruleSetId, Path mappingFile, ValidationTask task) throws IllegalStateException, IOException {
+        Logger.getLogger(MzTabValidationService.class.getName()).
+            log(java.util.logging.Level.INFO,
+                "Running validation and preview on file {0} for mzTab version={1}, validationLevel={2}, maxErrors={3}, checkCvMapping={4}, ruleSet={5}",
+                new Object[]{filepath, mzTabVersion, validationLevel,
+                    maxErrors, checkCvMapping, ruleSetId});
+        task.checkCancelled();
+        CvMapping ruleSet = mzTabVersion == MzTabVersion.MZTAB_2_0 && checkCvMapping ? ruleSetCache.
+            get(ruleSetId, mappingFile) : null;
+        ParserReadProbe readProbe = new ParserReadProbe(filepath, task.
+            getProgress());
+        readProbes.add(readProbe);
+        try {
+            task.getProgress().
+                setStage(ValidationProgress.Stage.PARSING);
+            switch (mzTabVersion) {
+                case MZTAB_1_0:
+                    return new EbiValidator(task).validateAndParse(filepath,
+                        validationLevel.name(),
+                        maxErrors, checkCvMapping, null);
+                case MZTAB_2_0:
+                    return new MzTabMValidator(semanticValidationEngine,
+                        maxPreviewRows,
+                        task).validateAndParse(
+                            filepath,
+                            validationLevel.name(),
+                            maxErrors, checkCvMapping, ruleSet);
+                default:
+                    throw new IllegalStateException(
+                        "Unsupported mzTab version: " + mzTabVersion.toString());
+            }
+        } finally {
+            readProbes.remove(readProbe);
+        }
+    }
+
+    /**
+     * Updates the read progress of the files being parsed.
+     */
+    @Scheduled(fixedDelayString = "${validation.progress.pollInterval:500}")
+    public void pollReadProgress() {
+        readProbes.forEach(ParserReadProbe::update);
     }
 
     @Override
@@ -237,12 +366,25 @@ public class MzTabValidationService implements ValidationService {
             collect(Collectors.toList());
     }
 
+    @Override
+    public ValidationResultView asResultView(
+        List<ValidationMessage> validationMessages, ValidationLevel level,
+        int maxErrors, Map<String, PreviewTable> mzTabContents) {
+        List<ValidationResult> validationResults = asValidationResults(
+            validationMessages);
+        List<ValidationResult> filteredResults = filterByLevel(
+            validationResults, level);
+        return new ValidationResultView(
+            new ArrayList<>(filteredResults.subList(0, Math.min(
+                filteredResults.size(), Math.max(0, maxErrors)))),
+            new ValidationStatistics(validationResults), mzTabContents);
+    }
+
     @Override
     public ToolResult getStatus(UUID userSessionId) {
         return resultService.getOrCreateResultFor(userSessionId);
     }
 
-    @Async("toolThreadPoolTaskExecutor")
     @Override
     public CompletableFuture<ToolResult> runValidation(MzTabVersion mzTabVersion,
         UserSessionFile userSessionFile, int maxErrors,
@@ -251,36 +393,50 @@ public class MzTabValidationService implements ValidationService {
         UUID userSessionId = userSessionFile.getSessionId();
         ToolResult status = resultService.getOrCreateResultFor(
             userSessionId);
-        //return immediately, if we have finished already
-        if (status.getStatus() == Status.FINISHED || status.getStatus() == Status.FAILED) {
+        //return immediately, if we have finished or started already
+        if (status.getStatus() != Status.UNINITIALIZED) {
             return CompletableFuture.completedFuture(status);
         }
-        if (status.getStatus() == Status.UNINITIALIZED) {
-            tracker.started(userSessionId, "validation", "init");
-            status.setStatus(Status.PREPARING);
+        tracker.started(userSessionId, "validation", "init");
+        updateStatus(userSessionId, status, Status.PREPARING);
+        CompletableFuture<ValidationReport> report;
+        try {
             Path filepath = storageService.load(userSessionFile,
                 StorageService.SLOT.MZTABFILE);
-            status.setStatus(Status.STARTED);
-            try {
-                List<ValidationMessage> validationResults = new ArrayList<>();
-                status.setStatus(Status.RUNNING);
-                Path mappingFilePath = storageService.load(mappingFile, StorageService.SLOT.MAPPINGFILE);
-                if (!mappingFilePath.toFile().exists()) {
-                    throw new IOException("Semantic validation file "+mappingFilePath+" does not exist!");
+            updateStatus(userSessionId, status, Status.STARTED);
+            report = validateShared(mzTabVersion, userSessionFile, filepath,
+                validationLevel, maxErrors, checkCvMapping, mappingFile,
+                status.getParameters().
+                    get(ToolResult.Keys.CLIENT), status);
+            updateStatus(userSessionId, status, Status.RUNNING);
+        } catch (IOException | RuntimeException ex) {
+            report = CompletableFuture.failedFuture(ex);
+        }
+        return report.handle((validationReport, throwable) -> {
+            Throwable cause = throwable instanceof CompletionException && throwable.
+                getCause() != null ? throwable.getCause() : throwable;
+            if (cause instanceof CancellationException) {
+                tracker.stopped(userSessionId, "validation", "cancel");
+                // the result of a deleted session is not stored again
+                if (resultService.getOrCreateResultFor(userSessionId) == status) {
+                    updateStatus(userSessionId, status, Status.CANCELLED);
                 }
-                List<ValidationMessage> messages = validate(mzTabVersion, filepath, validationLevel,
-                        maxErrors, checkCvMapping, mappingFilePath);
-                validationResults.addAll(messages);
-                tracker.stopped(userSessionFile.getSessionId(), "validation",
+                return status;
+            }
+            if (throwable == null) {
+                List<ValidationMessage> validationResults = new ArrayList<>(
+                    validationReport.getAllMessages());
+                tracker.stopped(userSessionId, "validation",
                     "success");
                 status.setMessages(validationResults);
+                status.setSemanticMessages(validationReport.
+                    getSemanticMessages());
+                status.setMzTabContents(validationReport.getContents());
+                status.setResultView(asResultView(validationResults,
+                    validationLevel, maxErrors, validationReport.getContents()));
                 status.setStatus(Status.FINISHED);
-                resultService.addResultFor(userSessionId, status);
-                return CompletableFuture.completedFuture(status);
-            } catch (IOException | RuntimeException ex) {
-                tracker.
-                    stopped(userSessionFile.getSessionId(), "validation",
-                        "fail");
+            } else {
+                Exception ex = cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
                 Logger.getLogger(MzTabValidationService.class.getName()).
                     log(Level.SEVERE, null, ex);
                 status.setException(ex);
@@ -300,13 +456,36 @@ public class MzTabValidationService implements ValidationService {
                     vm.setMessage(ex.getMessage());
                     status.setMessages(Arrays.asList(vm));
                 }
-                resultService.addResultFor(userSessionId, status);
+                status.setResultView(asResultView(status.getMessages(),
+                    validationLevel, maxErrors, status.getMzTabContents()));
                 tracker.
-                    stopped(userSessionFile.getSessionId(), "validation", "fail");
-                return CompletableFuture.completedFuture(status);
+                    stopped(userSessionId, "validation", "fail");
             }
-        } else {
-            return CompletableFuture.completedFuture(status);
+            resultService.addResultFor(userSessionId, status);
+            eventPublisher.publishEvent(new ValidationStatusEvent(userSessionId,
+                status));
+            return status;
+        });
+    }
+
+    @Override
+    public boolean cancel(UUID userSessionId) {
+        return inFlightValidations.cancel(userSessionId);
+    }
+
+    @EventListener
+    public void onSessionFilesDeleted(SessionFilesDeletedEvent event) {
+        if (cancel(event.getSessionId())) {
+            Logger.getLogger(MzTabValidationService.class.getName()).
+                log(Level.INFO, "Cancelled validation of deleted session {0}",
+                    event.getSessionId());
         }
     }
+
+    private void updateStatus(UUID userSessionId, ToolResult result,
+        Status status) {
+        result.setStatus(status);
+        eventPublisher.publishEvent(new ValidationStatusEvent(userSessionId,
+            result));
+    }
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.validation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.lifstools.mztab.validator.webapp.domain.ValidationProgress;
+
+/**
+ * Follows how far a parser has read a file that it opens itself. The
+ * position of the parser's file descriptor is taken from
+ * <code>/proc/self/fdinfo</code>, so that the file is not read a second time.
+ * Only a small window behind that position is sampled for the section of the
+ * lines being read and their length, from which the number of lines read is
+ * estimated.
+ *
+ * Without procfs, i.e. on other systems than Linux, only the file size is
+ * reported. Compressed files are not sampled.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Slf4j
+class ParserReadProbe {
+
+    private static final Path FD_DIRECTORY = Paths.get("/proc/self/fd");
+    private static final Path FDINFO_DIRECTORY = Paths.get("/proc/self/fdinfo");
+    private static final int SAMPLE_BYTES = 8 * 1024;
+
+    private final Path file;
+    private final ValidationProgress progress;
+    private final boolean sampled;
+    private long sampledBytes = 0;
+    private long sampledLines = 0;
+
+    ParserReadProbe(Path file, ValidationProgress progress) throws IOException {
+        this.file = file.toRealPath();
+        this.progress = progress;
+        this.sampled = !file.getFileName().
+            toString().
+            endsWith(".gz");
+        progress.setBytesTotal(Files.size(this.file));
+    }
+
+    /**
+     * Updates the progress from the parser's current position. Called
+     * periodically while the file is parsed, never concurrently.
+     */
+    void update() {
+        if (progress.getStage() != ValidationProgress.Stage.PARSING) {
+            return;
+        }
+        long position = position();
+        // the parser may have closed the file, its position never goes back
+        if (position <= progress.getBytesRead()) {
+            return;
+        }
+        progress.setBytesRead(position);
+        if (sampled) {
+            sample(position);
+            if (sampledBytes > 0) {
+                progress.setLinesRead(Math.round((double) position * sampledLines / sampledBytes));
+            }
+        }
+    }
+
+    /**
+     * Returns the largest position of all open descriptors of the file.
+     *
+     * @return the position, -1 if the file is not open or procfs is not
+     * available.
+     */
+    long position() {
+        long position = -1;
+        if (!Files.isDirectory(FDINFO_DIRECTORY)) {
+            return position;
+        }
+        try (DirectoryStream<Path> descriptors = Files.newDirectoryStream(
+            FD_DIRECTORY)) {
+            for (Path descriptor : descriptors) {
+                try {
+                    if (!file.equals(Files.readSymbolicLink(descriptor))) {
+                        continue;
+                    }
+                    List<String> info = Files.readAllLines(FDINFO_DIRECTORY.
+                        resolve(descriptor.getFileName()));
+                    for (String line : info) {
+                        if (line.startsWith("pos:")) {
+                            position = Math.max(position, Long.parseLong(line.
+                                substring(4).
+                                trim()));
+                        }
+                    }
+                } catch (IOException | NumberFormatException ex) {
+                    // closed in the meantime
+                }
+            }
+        } catch (IOException ex) {
+            log.debug("Could not list open files: {}", ex.getMessage());
+        }
+        return position;
+    }
+
+    /**
+     * Reads the complete lines in the window behind the position. The parser
+     * reads ahead into its buffer, so that these are the lines it is about
+     * to parse.
+     */
+    private void sample(long position) {
+        ByteBuffer window = ByteBuffer.allocate(SAMPLE_BYTES);
+        try (FileChannel channel = FileChannel.open(file,
+            StandardOpenOption.READ)) {
+            channel.read(window, Math.max(0, position - SAMPLE_BYTES));
+        } catch (IOException ex) {
+            log.debug("Could not sample {}: {}", file, ex.getMessage());
+            return;
+        }
+        byte[] bytes = window.array();
+        int end = window.position();
+        int lineStart = -1;
+        String section = null;
+        for (int i = 0; i < end; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            if (lineStart >= 0) {
+                sampledLines++;
+                sampledBytes += i + 1 - lineStart;
+                String lineSection = sectionOf(bytes, lineStart, i);
+                section = lineSection == null ? section : lineSection;
+            }
+            lineStart = i + 1;
+        }
+        if (section != null) {
+            progress.setSection(section);
+        }
+    }
+
+    /**
+     * Returns the section of a line from its prefix, header lines belong to
+     * the section of their table.
+     *
+     * @return the section, null for comments, empty or unknown lines.
+     */
+    static String sectionOf(byte[] bytes, int start, int end) {
+        if (end - start < 3) {
+            return null;
+        }
+        String prefix = new String(bytes, start, 3, StandardCharsets.US_ASCII);
+        switch (prefix) {
+            case "MTD":
+                return "MTD";
+            case "PRH":
+            case "PRT":
+                return "PRT";
+            case "PEH":
+            case "PEP":
+                return "PEP";
+            case "PSH":
+            case "PSM":
+                return "PSM";
+            case "SMH":
+            case "SML":
+                return "SML";
+            case "SFH":
+            case "SMF":
+                return "SMF";
+            case "SEH":
+            case "SME":
+                return "SME";
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.validation;
+
+import info.psidev.cvmapping.CvMappingRule;
+import info.psidev.cvmapping.CvTerm;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.lifstools.mztab.validator.webapp.service.ontology.OboOntologyEngine;
+import org.lifstools.mztab.validator.webapp.service.ontology.OboOntologyStore;
+import org.lifstools.mztab.validator.webapp.service.ontology.OntologyCatalog;
+import org.lifstools.mztab2.model.Parameter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Remembers, across validations, which terms of a CvMapping rule a parameter
+ * matches. Files from the same instrument or pipeline usually carry the same
+ * parameters, so that only new parameters need to be checked against the
+ * ontology.
+ *
+ * Verdicts are keyed by the signature of the rule, which covers its id,
+ * combination logic and terms, and by the cv label and accession of the
+ * parameter. A changed rule therefore never sees the verdicts of its previous
+ * version. All verdicts are dropped when the OBO snapshot is reloaded or the
+ * version of an ontology in the {@link OntologyCatalog} changes. The cache is
+ * bounded and evicts the least recently used verdicts.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Slf4j
+@Service
+public class RuleVerdictCache {
+
+    private final OboOntologyEngine oboOntologyEngine;
+    private final OntologyCatalog ontologyCatalog;
+    private final int maxEntries;
+    private final Map<String, BitSet> verdicts;
+    private OboOntologyStore store;
+    private String versions;
+
+    @Autowired
+    public RuleVerdictCache(OboOntologyEngine oboOntologyEngine,
+        OntologyCatalog ontologyCatalog,
+        @Value("${validation.verdictCache.maxEntries:50000}") int maxEntries) {
+        this.oboOntologyEngine = oboOntologyEngine;
+        this.ontologyCatalog = ontologyCatalog;
+        this.maxEntries = maxEntries;
+        this.verdicts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, BitSet> eldest) {
+                return size() > RuleVerdictCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the terms of the rule that the parameter matches.
+     *
+     * @param ruleSignature the signature of the rule, see
+     * {@link #signature(CvMappingRule)}.
+     * @param parameter the parameter.
+     * @param matcher computes the matching terms if there is no verdict yet,
+     * as indices into the terms of the rule.
+     * @return the indices of the matching terms, must not be modified.
+     */
+    public BitSet get(String ruleSignature, Parameter parameter,
+        Supplier<BitSet> matcher) {
+        if (maxEntries <= 0) {
+            return matcher.get();
+        }
+        String key = ruleSignature + "\t" + parameter.getCvLabel() + "\t"
+            + parameter.getCvAccession();
+        synchronized (verdicts) {
+            invalidateIfOntologiesChanged();
+            BitSet verdict = verdicts.get(key);
+            if (verdict != null) {
+                return verdict;
+            }
+        }
+        // computed outside of the lock, concurrent misses may compute twice
+        BitSet verdict = matcher.get();
+        synchronized (verdicts) {
+            verdicts.put(key, verdict);
+        }
+        return verdict;
+    }
+
+    public int size() {
+        synchronized (verdicts) {
+            return verdicts.size();
+        }
+    }
+
+    /**
+     * Builds the signature of a rule from everything that determines which
+     * terms a parameter matches.
+     *
+     * @param rule the rule.
+     * @return the signature.
+     */
+    public static String signature(CvMappingRule rule) {
+        StringBuilder sb = new StringBuilder(rule.getId()).
+            append('|').
+            append(rule.getCvTermsCombinationLogic());
+        for (CvTerm term : rule.getCvTerm()) {
+            sb.append('|').
+                append(term.getTermAccession()).
+                append(term.isUseTerm() ? "+use" : "-use").
+                append(term.isAllowChildren() ? "+children" : "-children");
+        }
+        return sb.toString();
+    }
+
+    private void invalidateIfOntologiesChanged() {
+        OboOntologyStore currentStore = oboOntologyEngine.getStore();
+        String currentVersions = ontologyCatalog.getVersions();
+        if (currentStore != store || !currentVersions.equals(versions)) {
+            if (!verdicts.isEmpty()) {
+                log.info("Ontologies changed, dropping {} rule verdicts",
+                    verdicts.size());
+            }
+            verdicts.clear();
+            store = currentStore;
+            versions = currentVersions;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.validation;
+
+import info.psidev.cvmapping.CvMapping;
+import info.psidev.cvmapping.CvMappingRule;
+import info.psidev.cvmapping.CvMappingRuleList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+import lombok.extern.slf4j.Slf4j;
+import org.lifstools.mztab.validator.webapp.service.ontology.OntologyUnavailableException;
+import org.lifstools.mztab2.cvmapping.CvParameterLookupService;
+import org.lifstools.mztab2.model.MzTab;
+import org.lifstools.mztab2.model.Parameter;
+import org.lifstools.mztab2.model.ValidationMessage;
+import org.lifstools.mztab2.validation.CvMappingValidator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+/**
+ * Evaluates the rules of a CvMapping rule set concurrently on the
+ * semanticValidationTaskExecutor. Each rule set is compiled once into a
+ * {@link CvMappingEvaluationPlan}, which selects the parameters of all rules
+ * in a single traversal of the mzTab model. Each rule is then evaluated
+ * independently, the messages are merged in rule order, so that the result is
+ * the same as for a serial evaluation. The {@link CvMappingRuleEvaluator}
+ * validates each rule on its selected parameters. Only rules whose selector
+ * could not be compiled are validated by the {@link CvMappingValidator} on a
+ * rule set containing just that rule, which traverses the mzTab model again.
+ *
+ * Rules that can not be checked because the ontology lookup service is
+ * unavailable are reported with a single "Ontology unavailable" warning.
+ *
+ * At most maxErrors messages are returned. Rules are skipped once all
+ * preceding rules have finished and reported maxErrors messages, or once the
+ * validation has been cancelled. Rules that have not started when the merge
+ * stops are cancelled.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Slf4j
+@Service
+public class SemanticValidationEngine {
+
+    private final CvParameterLookupService lookupService;
+    private final AllowedTermSets allowedTermSets;
+    private final CvMappingRuleEvaluator ruleEvaluator;
+    private final Executor executor;
+    // rule sets are compared by identity, evicted rule sets release their plan
+    private final Map<CvMapping, CvMappingEvaluationPlan> plans = Collections.
+        synchronizedMap(new WeakHashMap<>());
+
+    @Autowired
+    public SemanticValidationEngine(CvParameterLookupService lookupService,
+        AllowedTermSets allowedTermSets, RuleVerdictCache ruleVerdictCache,
+        @Qualifier("semanticValidationTaskExecutor") Executor executor) {
+        this.lookupService = lookupService;
+        this.allowedTermSets = allowedTermSets;
+        this.ruleEvaluator = new CvMappingRuleEvaluator(lookupService,
+            allowedTermSets, ruleVerdictCache);
+        this.executor = executor;
+    }
+
+    /**
+     * Validates the mzTab model against the rules of the rule set.
+     *
+     * @param mzTab the mzTab model.
+     * @param ruleSet the rule set.
+     * @param errorIfTermNotInRule whether terms not covered by a rule are
+     * reported as errors.
+     * @param maxErrors the maximum number of messages to return.
+     * @return the validation messages, in rule order.
+     */
+    public List<ValidationMessage> validate(MzTab mzTab, CvMapping ruleSet,
+        boolean errorIfTermNotInRule, int maxErrors) {
+        return validate(mzTab, ruleSet, errorIfTermNotInRule, maxErrors,
+            () -> false);
+    }
+
+    /**
+     * Validates the mzTab model against the rules of the rule set, skipping
+     * the remaining rules once the validation has been cancelled.
+     *
+     * @param mzTab the mzTab model.
+     * @param ruleSet the rule set.
+     * @param errorIfTermNotInRule whether terms not covered by a rule are
+     * reported as errors.
+     * @param maxErrors the maximum number of messages to return.
+     * @param cancelled returns true once the validation has been cancelled.
+     * @return the validation messages of the evaluated rules, in rule order.
+     */
+    public List<ValidationMessage> validate(MzTab mzTab, CvMapping ruleSet,
+        boolean errorIfTermNotInRule, int maxErrors, BooleanSupplier cancelled) {
+        CvMappingEvaluationPlan plan = plans.computeIfAbsent(ruleSet,
+            (rules) ->
+        {
+            allowedTermSets.expand(rules);
+            return CvMappingEvaluationPlan.compile(rules);
+        });
+        List<CvMappingRule> rules = plan.getRules();
+        List<List<Parameter>> selection = plan.select(mzTab);
+        RuleProgress progress = new RuleProgress(rules.size(), maxErrors);
+        List<CompletableFuture<List<ValidationMessage>>> results = new ArrayList<>(
+            rules.size());
+        for (int i = 0; i < rules.size(); i++) {
+            int ruleIndex = i;
+            CvMappingRule rule = rules.get(i);
+            results.add(CompletableFuture.supplyAsync(() -> {
+                if (cancelled.getAsBoolean() || progress.isSatisfiedBefore(
+                    ruleIndex)) {
+                    progress.done(ruleIndex, 0);
+                    return Collections.<ValidationMessage>emptyList();
+                }
+                List<ValidationMessage> messages;
+                try {
+                    if (plan.isCompiled(ruleIndex)) {
+                        messages = ruleEvaluator.validate(rule, plan.
+                            getRuleSignature(ruleIndex), selection.get(
+                            ruleIndex), errorIfTermNotInRule);
+                    } else {
+                        messages = new CvMappingValidator(singleRuleSet(
+                            ruleSet, rule), lookupService, errorIfTermNotInRule).
+                            validate(mzTab);
+                    }
+                } catch (OntologyUnavailableException ex) {
+                    log.warn("Skipping rule {}: {}", rule.getId(), ex.
+                        getMessage());
+                    messages = Collections.singletonList(CvMappingRuleEvaluator.
+                        ontologyUnavailable(rule, ex));
+                }
+                if (messages == null) {
+                    messages = Collections.emptyList();
+                }
+                progress.done(ruleIndex, messages.size());
+                return messages;
+            }, executor));
+        }
+        List<ValidationMessage> merged = new ArrayList<>();
+        try {
+            for (CompletableFuture<List<ValidationMessage>> result : results) {
+                merged.addAll(result.join());
+                if (merged.size() >= maxErrors || cancelled.getAsBoolean()) {
+                    break;
+                }
+            }
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        } finally {
+            // rules that have not started yet are dropped by the executor,
+            // finished ones are not affected
+            results.forEach((result) -> result.cancel(false));
+        }
+        return new ArrayList<>(merged.subList(0, Math.min(merged.size(),
+            Math.max(0, maxErrors))));
+    }
+
+    private static CvMapping singleRuleSet(CvMapping ruleSet,
+        CvMappingRule rule) {
+        CvMapping singleRuleSet = new CvMapping();
+        singleRuleSet.setModelName(ruleSet.getModelName());
+        singleRuleSet.setModelURI(ruleSet.getModelURI());
+        singleRuleSet.setModelVersion(ruleSet.getModelVersion());
+        singleRuleSet.setCvReferenceList(ruleSet.getCvReferenceList());
+        CvMappingRuleList ruleList = new CvMappingRuleList();
+        ruleList.getCvMappingRule().
+            add(rule);
+        singleRuleSet.setCvMappingRuleList(ruleList);
+        return singleRuleSet;
+    }
+
+    /**
+     * Tracks the number of messages per finished rule, -1 marks rules that
+     * have not finished yet.
+     */
+    private static class RuleProgress {
+
+        private final int[] messageCounts;
+        private final int maxErrors;
+
+        RuleProgress(int rules, int maxErrors) {
+            this.messageCounts = new int[rules];
+            Arrays.fill(messageCounts, -1);
+            this.maxErrors = maxErrors;
+        }
+
+        synchronized void done(int ruleIndex, int messages) {
+            messageCounts[ruleIndex] = messages;
+        }
+
+        synchronized boolean isSatisfiedBefore(int ruleIndex) {
+            int messages = 0;
+            for (int i = 0; i < ruleIndex; i++) {
+                if (messageCounts[i] < 0) {
+                    return false;
+                }
+                messages += messageCounts[i];
+                if (messages >= maxErrors) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
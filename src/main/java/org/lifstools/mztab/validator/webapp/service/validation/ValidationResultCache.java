@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.validation;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.lifstools.mztab.validator.webapp.domain.ValidationReport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * A bounded, least recently used cache of validation reports, keyed by
+ * {@link ValidationCacheKey}. Byte-identical files that are validated with
+ * the same parameters reuse the report of an earlier run.
+ *
+ * Hits and misses are exported as the <code>validation.cache.hits</code>
+ * and <code>validation.cache.misses</code> metrics.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Slf4j
+@Service
+public class ValidationResultCache implements MeterBinder {
+
+    private final int maxEntries;
+    private final Map<ValidationCacheKey, ValidationReport> reports;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Autowired
+    public ValidationResultCache(
+        @Value("${validation.cache.maxEntries:100}") int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.reports = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<ValidationCacheKey, ValidationReport> eldest) {
+                return size() > ValidationResultCache.this.maxEntries;
+            }
+        };
+    }
+
+    public Optional<ValidationReport> get(ValidationCacheKey key) {
+        ValidationReport report;
+        synchronized (reports) {
+            report = reports.get(key);
+        }
+        if (report == null) {
+            misses.incrementAndGet();
+            log.debug("Validation cache miss for {}", key);
+        } else {
+            hits.incrementAndGet();
+            log.debug("Validation cache hit for {}", key);
+        }
+        return Optional.ofNullable(report);
+    }
+
+    public void put(ValidationCacheKey key, ValidationReport report) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        synchronized (reports) {
+            reports.put(key, report);
+        }
+    }
+
+    public int size() {
+        synchronized (reports) {
+            return reports.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public void clear() {
+        synchronized (reports) {
+            reports.clear();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("validation.cache.hits", hits, AtomicLong::get).
+            description("Validations answered from the result cache").
+            register(registry);
+        FunctionCounter.builder("validation.cache.misses", misses,
+            AtomicLong::get).
+            description("Validations not found in the result cache").
+            register(registry);
+        Gauge.builder("validation.cache.size", this,
+            ValidationResultCache::size).
+            description("Number of cached validation reports").
+            register(registry);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.validation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.FutureTask;
+import lombok.extern.slf4j.Slf4j;
+import org.lifstools.mztab.validator.webapp.domain.ValidationProgress;
+import org.lifstools.mztab.validator.webapp.domain.ValidationReport;
+import org.lifstools.mztab.validator.webapp.service.execution.FairValidationScheduler;
+
+/**
+ * A running validation shared by the sessions waiting for its report. Each
+ * session receives its own future, so that a session can stop waiting
+ * without affecting the others. The validation itself is cancelled when the
+ * last waiting session detaches: a queued validation is removed from the
+ * scheduler's queue, a running one is interrupted and stops at the next call
+ * to {@link #checkCancelled()}.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Slf4j
+public class ValidationTask {
+
+    private final ValidationCacheKey key;
+    private final ValidationProgress progress = new ValidationProgress();
+    private final Map<UUID, CompletableFuture<ValidationReport>> waiters = new LinkedHashMap<>();
+    private volatile boolean cancelled = false;
+    private boolean done = false;
+    private ValidationReport report;
+    private Throwable failure;
+    private FutureTask<ValidationReport> work;
+    private CompletableFuture<ValidationReport> result;
+    private FairValidationScheduler scheduler;
+
+    ValidationTask(ValidationCacheKey key) {
+        this.key = key;
+    }
+
+    public ValidationCacheKey getKey() {
+        return key;
+    }
+
+    public ValidationProgress getProgress() {
+        return progress;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Throws a {@link CancellationException}, if the validation has been
+     * cancelled or the validating thread has been interrupted. Called by the
+     * validation between its steps.
+     */
+    public void checkCancelled() {
+        if (cancelled || Thread.currentThread().
+            isInterrupted()) {
+            throw new CancellationException("Validation of " + key
+                + " was cancelled");
+        }
+    }
+
+    /**
+     * Queues the validation on the scheduler.
+     *
+     * @param scheduler the scheduler.
+     * @param client the client that requested the validation.
+     * @param cost the estimated cost of the validation.
+     * @param validation the validation.
+     * @return the future report.
+     */
+    public CompletableFuture<ValidationReport> submit(
+        FairValidationScheduler scheduler, String client, long cost,
+        Callable<ValidationReport> validation) {
+        CompletableFuture<ValidationReport> result = new CompletableFuture<>();
+        FutureTask<ValidationReport> task = new FutureTask<>(() -> {
+            try {
+                checkCancelled();
+                ValidationReport validationReport = validation.call();
+                result.complete(validationReport);
+                return validationReport;
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+                throw t;
+            }
+        });
+        synchronized (this) {
+            if (cancelled) {
+                result.cancel(false);
+                return result;
+            }
+            this.work = task;
+            this.result = result;
+            this.scheduler = scheduler;
+        }
+        scheduler.execute(task, client, cost);
+        return result;
+    }
+
+    /**
+     * Adds a waiting session.
+     *
+     * @param sessionId the session id.
+     * @return the future report for the session, or null if the validation
+     * has been cancelled.
+     */
+    synchronized CompletableFuture<ValidationReport> attach(UUID sessionId) {
+        if (cancelled) {
+            return null;
+        }
+        if (done) {
+            return failure == null ? CompletableFuture.completedFuture(report) : CompletableFuture.
+                failedFuture(failure);
+        }
+        return waiters.computeIfAbsent(sessionId,
+            (id) -> new CompletableFuture<>());
+    }
+
+    /**
+     * Removes a waiting session and cancels its future. Cancels the
+     * validation, if no other session is waiting for it.
+     *
+     * @param sessionId the session id.
+     * @return true if the session was waiting for this validation.
+     */
+    boolean detach(UUID sessionId) {
+        CompletableFuture<ValidationReport> waiter;
+        synchronized (this) {
+            waiter = waiters.remove(sessionId);
+            if (waiter == null || done) {
+                return false;
+            }
+            if (waiters.isEmpty()) {
+                cancel();
+            }
+        }
+        waiter.cancel(false);
+        return true;
+    }
+
+    /**
+     * Passes the report or failure of the validation on to the waiting
+     * sessions.
+     */
+    void complete(ValidationReport report, Throwable failure) {
+        Map<UUID, CompletableFuture<ValidationReport>> completed;
+        synchronized (this) {
+            this.done = true;
+            this.report = report;
+            this.failure = failure;
+            completed = new LinkedHashMap<>(waiters);
+            waiters.clear();
+        }
+        completed.values().
+            forEach((waiter) -> {
+                if (failure == null) {
+                    waiter.complete(report);
+                } else {
+                    waiter.completeExceptionally(failure);
+                }
+            });
+    }
+
+    private void cancel() {
+        log.debug("Cancelling validation for {}", key);
+        cancelled = true;
+        if (work != null) {
+            // queued validations release their place right away
+            scheduler.remove(work);
+            work.cancel(true);
+            result.cancel(false);
+        }
+    }
+}
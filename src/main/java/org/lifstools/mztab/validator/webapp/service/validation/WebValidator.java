@@ -15,6 +15,9 @@
  */
 package org.lifstools.mztab.validator.webapp.service.validation;
 
+import info.psidev.cvmapping.CvMapping;
+import org.lifstools.mztab.validator.webapp.domain.PreviewTable;
+import org.lifstools.mztab.validator.webapp.domain.ValidationReport;
 import org.lifstools.mztab2.model.ValidationMessage;
 import java.io.IOException;
 import java.nio.file.Path;
@@ -28,8 +31,15 @@ import java.util.Map;
 public interface WebValidator {
 
     public List<ValidationMessage> validate(Path filepath,
-        String validationLevel, int maxErrors, boolean checkCvMapping, Path validationFile) throws IllegalStateException, IOException;
+        String validationLevel, int maxErrors, boolean checkCvMapping, CvMapping ruleSet) throws IllegalStateException, IOException;
 
-    public Map<String, List<Map<String,String>>> parse(Path filepath, String validationLevel,
+    /**
+     * Parses the file once and returns the structural and semantic
+     * validation messages together with the preview table model.
+     */
+    public ValidationReport validateAndParse(Path filepath,
+        String validationLevel, int maxErrors, boolean checkCvMapping, CvMapping ruleSet) throws IllegalStateException, IOException;
+
+    public Map<String, PreviewTable> parse(Path filepath, String validationLevel,
         int maxErrors) throws IOException;
 }
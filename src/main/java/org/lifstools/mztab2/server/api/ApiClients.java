@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab2.server.api;
+
+import java.util.Optional;
+import javax.servlet.http.HttpServletRequest;
+import org.lifstools.mztab.validator.webapp.service.execution.FairValidationScheduler;
+
+/**
+ * Identifies REST API clients for fair scheduling of their validations.
+ * Clients are not authenticated, so that they are identified by their remote
+ * address only. Headers sent by the client, like an API key, could be chosen
+ * freely and are not trusted.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+final class ApiClients {
+
+    private ApiClients() {
+    }
+
+    /**
+     * Returns the client key of the request.
+     *
+     * @param request the current request.
+     * @return the client key, or the default client without a request.
+     */
+    static String clientOf(Optional<HttpServletRequest> request) {
+        return request.map((r) -> "address:" + r.getRemoteAddr()).
+            orElse(FairValidationScheduler.DEFAULT_CLIENT);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab2.server.api;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.annotations.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Optional;
+import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import org.lifstools.mztab.validator.webapp.domain.CvTermResolution;
+import org.lifstools.mztab.validator.webapp.service.cvcompletion.CvTermPrefixIndex;
+import org.lifstools.mztab.validator.webapp.service.cvcompletion.CvTermResolver;
+import org.lifstools.mztab2.model.Error;
+import org.lifstools.mztab2.model.Parameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+@Api(value = "cvterms", description = "The CV term API for autocompletion and resolution of CV terms.", tags = {"cvterms"})
+@RequestMapping(path = "/rest/v2")
+public interface CvTermApi {
+
+    Logger log = LoggerFactory.getLogger(CvTermApi.class);
+
+    default Optional<CvTermPrefixIndex> getCvTermPrefixIndex() {
+        return Optional.empty();
+    }
+
+    default Optional<CvTermResolver> getCvTermResolver() {
+        return Optional.empty();
+    }
+
+    default Optional<ObjectMapper> getObjectMapper() {
+        return Optional.empty();
+    }
+
+    @ApiOperation(value = "", nickname = "autocompleteCvTerm",
+        notes = "Returns the CV terms allowed by a rule of the default semantic validation rule set, whose name or accession contains a word starting with the query.",
+        response = Parameter.class, responseContainer = "List", tags = {
+            "cvterms",})
+    @ApiResponses(value = {
+        @ApiResponse(code = 200, message = "Matching terms",
+            response = Parameter.class, responseContainer = "List")
+        ,
+        @ApiResponse(code = 404, message = "Unknown rule id")
+        ,
+        @ApiResponse(code = 500, message = "Unexpected error",
+            response = Error.class)})
+    @RequestMapping(value = "/cvterms/autocomplete",
+        produces = {"application/json"},
+        method = RequestMethod.GET)
+    default ResponseEntity<List<Parameter>> autocompleteCvTerm(
+        @RequestParam(
+            name = "ruleId",
+            required = true)
+        @ApiParam(
+            name = "ruleId",
+            value = "The id of the mapping rule, e.g. mtd_quantification_method.")
+        @Valid String ruleId,
+        @RequestParam(
+            name = "q",
+            required = true)
+        @ApiParam(
+            name = "q",
+            value = "The beginning of a word of the term name or accession.")
+        @Valid String q,
+        @RequestParam(
+            name = "maxResults",
+            required = false,
+            defaultValue = "20")
+        @ApiParam(
+            name = "maxResults",
+            value = "The maximum number of terms to return.")
+        @Valid @Min(1) @Max(100) Integer maxResults) {
+        if (getCvTermPrefixIndex().
+            isPresent()) {
+            return getCvTermPrefixIndex().
+                get().
+                complete(q, ruleId, maxResults).
+                map((terms) -> new ResponseEntity<>(terms, HttpStatus.OK)).
+                orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+        } else {
+            log.warn(
+                "CvTermPrefixIndex not configured in default CvTermApi interface");
+        }
+        return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).
+            build();
+    }
+
+    @ApiOperation(value = "", nickname = "resolveCvTerms",
+        notes = "Resolves a batch of CV terms, given by their cv_label and cv_accession, to their names, obsolete flags and direct parents. The response is streamed in the order of the request.",
+        response = CvTermResolution.class, responseContainer = "List", tags = {
+            "cvterms",})
+    @ApiResponses(value = {
+        @ApiResponse(code = 200, message = "Resolved terms",
+            response = CvTermResolution.class, responseContainer = "List")
+        ,
+        @ApiResponse(code = 413, message = "Too many terms")
+        ,
+        @ApiResponse(code = 500, message = "Unexpected error",
+            response = Error.class)})
+    @RequestMapping(value = "/cvterms/resolve",
+        produces = {"application/json"},
+        consumes = {"application/json"},
+        method = RequestMethod.POST)
+    default ResponseEntity<StreamingResponseBody> resolveCvTerms(@ApiParam(
+        name = "terms", value = "The terms to resolve, only cv_label and cv_accession are used.", required = true) @RequestBody List<Parameter> terms) {
+        if (getCvTermResolver().
+            isPresent() && getObjectMapper().
+                isPresent()) {
+            CvTermResolver resolver = getCvTermResolver().
+                get();
+            if (terms.size() > resolver.getMaxBatchSize()) {
+                return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).
+                    build();
+            }
+            ObjectMapper objectMapper = getObjectMapper().
+                get();
+            StreamingResponseBody body = (outputStream) ->
+            {
+                try (JsonGenerator generator = objectMapper.getFactory().
+                    createGenerator(outputStream)) {
+                    generator.writeStartArray();
+                    resolver.resolve(terms, (resolution) ->
+                    {
+                        try {
+                            generator.writeObject(resolution);
+                            generator.flush();
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    });
+                    generator.writeEndArray();
+                } catch (UncheckedIOException ex) {
+                    throw ex.getCause();
+                }
+            };
+            return ResponseEntity.ok().
+                contentType(MediaType.APPLICATION_JSON).
+                body(body);
+        } else {
+            log.warn(
+                "CvTermResolver or ObjectMapper not configured in default CvTermApi interface");
+        }
+        return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).
+            build();
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab2.server.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.lifstools.mztab.validator.webapp.service.cvcompletion.CvTermPrefixIndex;
+import org.lifstools.mztab.validator.webapp.service.cvcompletion.CvTermResolver;
+import org.springframework.stereotype.Controller;
+import java.util.Optional;
+
+@Controller
+public class CvTermApiController implements CvTermApi {
+
+    private final ObjectMapper objectMapper;
+
+    private final CvTermPrefixIndex cvTermPrefixIndex;
+
+    private final CvTermResolver cvTermResolver;
+
+    @org.springframework.beans.factory.annotation.Autowired
+    public CvTermApiController(ObjectMapper objectMapper,
+        CvTermPrefixIndex cvTermPrefixIndex, CvTermResolver cvTermResolver) {
+        this.objectMapper = objectMapper;
+        this.cvTermPrefixIndex = cvTermPrefixIndex;
+        this.cvTermResolver = cvTermResolver;
+    }
+
+    @Override
+    public Optional<ObjectMapper> getObjectMapper() {
+        return Optional.ofNullable(objectMapper);
+    }
+
+    @Override
+    public Optional<CvTermPrefixIndex> getCvTermPrefixIndex() {
+        return Optional.ofNullable(cvTermPrefixIndex);
+    }
+
+    @Override
+    public Optional<CvTermResolver> getCvTermResolver() {
+        return Optional.ofNullable(cvTermResolver);
+    }
+
+}
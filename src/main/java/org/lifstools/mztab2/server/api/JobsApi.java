@@ -0,0 +1,355 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab2.server.api;
+
+import org.lifstools.mztab2.model.Error;
+import org.lifstools.mztab2.model.MzTab;
+import org.lifstools.mztab2.model.ValidationMessage;
+import org.lifstools.mztab.validator.webapp.domain.ToolResult;
+import org.lifstools.mztab.validator.webapp.domain.UserSessionFile;
+import org.lifstools.mztab.validator.webapp.domain.ValidationProgress;
+import org.lifstools.mztab.validator.webapp.domain.ValidationJob;
+import org.lifstools.mztab.validator.webapp.domain.ValidationLevel;
+import org.lifstools.mztab.validator.webapp.service.StorageService;
+import org.lifstools.mztab.validator.webapp.service.StorageService.SLOT;
+import org.lifstools.mztab.validator.webapp.service.ToolResultService;
+import org.lifstools.mztab.validator.webapp.service.ValidationService;
+import org.lifstools.mztab.validator.webapp.service.ValidationService.Status;
+import org.lifstools.mztab2.io.MzTabNonValidatingWriter;
+import io.swagger.annotations.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import javax.servlet.http.HttpServletRequest;
+import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+/**
+ * Asynchronous validation of mzTab-M files. A submitted file is validated in
+ * the background, the client polls the job status until it is FINISHED or
+ * FAILED and then retrieves the validation messages.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+@Api(value = "jobs", description = "The asynchronous validation API for mzTab-m documents.", tags = {"jobs"})
+@RequestMapping(path = "/rest/v2")
+public interface JobsApi {
+
+    Logger log = LoggerFactory.getLogger(JobsApi.class);
+
+    default Optional<ValidationService> getValidationService() {
+        return Optional.empty();
+    }
+
+    default Optional<StorageService> getStorageService() {
+        return Optional.empty();
+    }
+
+    default Optional<ToolResultService> getToolResultService() {
+        return Optional.empty();
+    }
+
+    default Optional<HttpServletRequest> getRequest() {
+        return Optional.empty();
+    }
+
+    @ApiOperation(value = "", nickname = "submitPlainValidationJob",
+        notes = "Submits an mzTab file in plain text / tsv format for validation. Returns immediately with the job, its status url is also returned in the Location header.",
+        response = ValidationJob.class, tags = {"jobs",})
+    @ApiResponses(value = {
+        @ApiResponse(code = 202, message = "Validation job accepted",
+            response = ValidationJob.class)
+        ,
+        @ApiResponse(code = 415, message = "Unsupported content type")
+        ,
+        @ApiResponse(code = 500, message = "Unexpected error",
+            response = Error.class)})
+    @RequestMapping(value = "/jobs",
+        produces = {"application/json"},
+        consumes = {"text/tab-separated-values", "text/plain"},
+        method = RequestMethod.POST)
+    default ResponseEntity<ValidationJob> submitPlainValidationJob(
+        @ApiParam(name = "mzTab file that should be validated.",
+            required = true) @Valid @RequestBody(required = true) String mztabfile,
+        @RequestParam(
+            name = "level",
+            defaultValue = "info",
+            required = false)
+        @ApiParam(
+            name = "level",
+            value = "The level of errors that should be reported, one of error, warn, info.")
+        @Valid String level,
+        @RequestParam(
+            name = "maxErrors",
+            defaultValue = "100",
+            required = false)
+        @ApiParam(
+            name = "maxErrors",
+            value = "The maximum number of errors to return.")
+        @Valid @Min(0) @Max(500) Integer maxErrors,
+        @RequestParam(
+            name = "semanticValidation",
+            defaultValue = "false",
+            required = false)
+        @ApiParam(
+            name = "semanticValidation",
+            value = "Whether a semantic validation against the default rule set should be performed.")
+        @Valid boolean semanticValidation) {
+        return submit(mztabfile, level, maxErrors, semanticValidation);
+    }
+
+    @ApiOperation(value = "", nickname = "submitValidationJob",
+        notes = "Submits an mzTab file in JSON representation for validation. Returns immediately with the job, its status url is also returned in the Location header.",
+        response = ValidationJob.class, tags = {"jobs",})
+    @ApiResponses(value = {
+        @ApiResponse(code = 202, message = "Validation job accepted",
+            response = ValidationJob.class)
+        ,
+        @ApiResponse(code = 415, message = "Unsupported content type")
+        ,
+        @ApiResponse(code = 500, message = "Unexpected error",
+            response = Error.class)})
+    @RequestMapping(value = "/jobs",
+        produces = {"application/json"},
+        consumes = {"application/json"},
+        method = RequestMethod.POST)
+    default ResponseEntity<ValidationJob> submitValidationJob(
+        @ApiParam(name = "mztabfile", value = "mzTab file that should be validated.",
+            required = true) @RequestBody MzTab mztabfile,
+        @RequestParam(
+            name = "level",
+            defaultValue = "info",
+            required = false)
+        @ApiParam(
+            name = "level",
+            value = "The level of errors that should be reported, one of error, warn, info.")
+        @Valid String level,
+        @RequestParam(
+            name = "maxErrors",
+            defaultValue = "100",
+            required = false)
+        @ApiParam(
+            name = "maxErrors",
+            value = "The maximum number of errors to return.")
+        @Valid @Min(0) @Max(500) Integer maxErrors,
+        @RequestParam(
+            name = "semanticValidation",
+            defaultValue = "false",
+            required = false)
+        @ApiParam(
+            name = "semanticValidation",
+            value = "Whether a semantic validation against the default rule set should be performed.")
+        @Valid boolean semanticValidation) {
+        try {
+            MzTabNonValidatingWriter writer = new MzTabNonValidatingWriter();
+            ByteArrayOutputStream stringWriter = new ByteArrayOutputStream();
+            writer.
+                write(new OutputStreamWriter(stringWriter, StandardCharsets.UTF_8), mztabfile);
+            return submit(stringWriter.toString(StandardCharsets.UTF_8), level,
+                maxErrors, semanticValidation);
+        } catch (IOException e) {
+            log.error("Couldn't serialize mzTab file of validation job", e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @ApiOperation(value = "", nickname = "getValidationJob",
+        notes = "Returns the status of a validation job.",
+        response = ValidationJob.class, tags = {"jobs",})
+    @ApiResponses(value = {
+        @ApiResponse(code = 200, message = "The validation job",
+            response = ValidationJob.class)
+        ,
+        @ApiResponse(code = 404, message = "Unknown job id")})
+    @RequestMapping(value = "/jobs/{jobId}",
+        produces = {"application/json"},
+        method = RequestMethod.GET)
+    default ResponseEntity<ValidationJob> getValidationJob(
+        @ApiParam(value = "The job id.", required = true) @PathVariable("jobId") UUID jobId) {
+        if (getValidationService().
+            isPresent()) {
+            ToolResult result = getValidationService().
+                get().
+                getStatus(jobId);
+            if (result.getStatus() == Status.UNINITIALIZED) {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            return new ResponseEntity<>(toJob(jobId, result), HttpStatus.OK);
+        }
+        return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).
+            build();
+    }
+
+    @ApiOperation(value = "", nickname = "getValidationJobResult",
+        notes = "Returns the validation messages of a finished or failed validation job.",
+        response = ValidationMessage.class, responseContainer = "List", tags = {
+            "jobs",})
+    @ApiResponses(value = {
+        @ApiResponse(code = 200, message = "The validation messages",
+            response = ValidationMessage.class, responseContainer = "List")
+        ,
+        @ApiResponse(code = 404, message = "Unknown job id")
+        ,
+        @ApiResponse(code = 409, message = "The job has not finished yet")})
+    @RequestMapping(value = "/jobs/{jobId}/result",
+        produces = {"application/json"},
+        method = RequestMethod.GET)
+    default ResponseEntity<List<ValidationMessage>> getValidationJobResult(
+        @ApiParam(value = "The job id.", required = true) @PathVariable("jobId") UUID jobId) {
+        if (getValidationService().
+            isPresent()) {
+            ToolResult result = getValidationService().
+                get().
+                getStatus(jobId);
+            switch (result.getStatus()) {
+                case UNINITIALIZED:
+                    return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+                case FINISHED:
+                case FAILED:
+                    List<ValidationMessage> messages = result.getMessages();
+                    int maxErrors = Integer.parseInt(result.getParameters().
+                        getOrDefault(ToolResult.Keys.MAXERRORS, "100"));
+                    return new ResponseEntity<>(messages.subList(0, Math.min(
+                        messages.size(), maxErrors)), HttpStatus.OK);
+                default:
+                    return new ResponseEntity<>(HttpStatus.CONFLICT);
+            }
+        }
+        return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).
+            build();
+    }
+
+    @ApiOperation(value = "", nickname = "cancelValidationJob",
+        notes = "Cancels a queued or running validation job.",
+        response = ValidationJob.class, tags = {"jobs",})
+    @ApiResponses(value = {
+        @ApiResponse(code = 200, message = "The cancelled validation job",
+            response = ValidationJob.class)
+        ,
+        @ApiResponse(code = 404, message = "Unknown job id")
+        ,
+        @ApiResponse(code = 409, message = "The job is not queued or running")})
+    @RequestMapping(value = "/jobs/{jobId}/cancel",
+        produces = {"application/json"},
+        method = RequestMethod.POST)
+    default ResponseEntity<ValidationJob> cancelValidationJob(
+        @ApiParam(value = "The job id.", required = true) @PathVariable("jobId") UUID jobId) {
+        if (getValidationService().
+            isPresent()) {
+            ValidationService validationService = getValidationService().
+                get();
+            ToolResult result = validationService.getStatus(jobId);
+            if (result.getStatus() == Status.UNINITIALIZED) {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            if (!validationService.cancel(jobId)) {
+                return new ResponseEntity<>(toJob(jobId, result),
+                    HttpStatus.CONFLICT);
+            }
+            return new ResponseEntity<>(toJob(jobId, validationService.
+                getStatus(jobId)), HttpStatus.OK);
+        }
+        return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).
+            build();
+    }
+
+    private ResponseEntity<ValidationJob> submit(String mztabfile, String level,
+        Integer maxErrors, boolean semanticValidation) {
+        if (getValidationService().
+            isPresent() && getStorageService().
+                isPresent() && getToolResultService().
+                    isPresent()) {
+            UUID jobId = UUID.randomUUID();
+            ValidationService.MzTabVersion version = ValidationService.MzTabVersion.MZTAB_2_0;
+            ValidationLevel validationLevel = ValidationLevel.valueOf(level == null ? "INFO" : level.
+                toUpperCase());
+            UserSessionFile file = getStorageService().
+                get().
+                store(mztabfile, jobId, SLOT.MZTABFILE);
+            ToolResult result = getToolResultService().
+                get().
+                getOrCreateResultFor(jobId);
+            Map<ToolResult.Keys, String> parameters = new EnumMap<>(
+                ToolResult.Keys.class);
+            parameters.put(ToolResult.Keys.MZTABVERSION, version.name());
+            parameters.put(ToolResult.Keys.MAXERRORS, maxErrors + "");
+            parameters.put(ToolResult.Keys.VALIDATIONLEVEL, validationLevel.
+                name());
+            parameters.put(ToolResult.Keys.CHECKCVMAPPING, Boolean.toString(
+                semanticValidation));
+            parameters.put(ToolResult.Keys.CLIENT, ApiClients.clientOf(getRequest()));
+            result.setParameters(parameters);
+            getToolResultService().
+                get().
+                addResultFor(jobId, result);
+            getValidationService().
+                get().
+                runValidation(version, file, maxErrors, validationLevel,
+                    semanticValidation, null);
+            ValidationJob job = toJob(jobId, result);
+            return ResponseEntity.accepted().
+                location(URI.create(job.getStatusUrl())).
+                body(job);
+        } else {
+            log.warn(
+                "ValidationService, StorageService or ToolResultService not configured in default JobsApi interface");
+        }
+        return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).
+            build();
+    }
+
+    private ValidationJob toJob(UUID jobId, ToolResult result) {
+        ValidationJob job = new ValidationJob();
+        job.setJobId(jobId);
+        job.setStatus(result.getStatus());
+        job.setStatusUrl(ServletUriComponentsBuilder.fromCurrentContextPath().
+            path("/rest/v2/jobs/{jobId}").
+            buildAndExpand(jobId).
+            toUriString());
+        ValidationProgress validationProgress = result.getValidationProgress();
+        if (result.getStatus() == Status.FINISHED || result.getStatus() == Status.FAILED) {
+            job.setResultUrl(ServletUriComponentsBuilder.fromCurrentContextPath().
+                path("/rest/v2/jobs/{jobId}/result").
+                buildAndExpand(jobId).
+                toUriString());
+        } else if (validationProgress != null && result.getStatus() != Status.CANCELLED) {
+            job.setStage(validationProgress.getStage());
+            job.setBytesRead(validationProgress.getBytesRead());
+            job.setBytesTotal(validationProgress.getBytesTotal());
+            job.setLinesRead(validationProgress.getLinesRead());
+            job.setSection(validationProgress.getSection());
+        }
+        return job;
+    }
+}
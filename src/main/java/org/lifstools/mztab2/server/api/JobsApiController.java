@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab2.server.api;
+
+import org.lifstools.mztab.validator.webapp.service.StorageService;
+import org.lifstools.mztab.validator.webapp.service.ToolResultService;
+import org.lifstools.mztab.validator.webapp.service.ValidationService;
+import org.springframework.stereotype.Controller;
+import java.util.Optional;
+import javax.servlet.http.HttpServletRequest;
+
+@Controller
+public class JobsApiController implements JobsApi {
+
+    private final StorageService storageService;
+
+    private final ValidationService validationService;
+
+    private final ToolResultService toolResultService;
+
+    private final HttpServletRequest request;
+
+    @org.springframework.beans.factory.annotation.Autowired
+    public JobsApiController(StorageService storageService,
+        ValidationService validationService,
+        ToolResultService toolResultService, HttpServletRequest request) {
+        this.storageService = storageService;
+        this.validationService = validationService;
+        this.toolResultService = toolResultService;
+        this.request = request;
+    }
+
+    @Override
+    public Optional<ValidationService> getValidationService() {
+        return Optional.ofNullable(validationService);
+    }
+
+    @Override
+    public Optional<StorageService> getStorageService() {
+        return Optional.ofNullable(storageService);
+    }
+
+    @Override
+    public Optional<ToolResultService> getToolResultService() {
+        return Optional.ofNullable(toolResultService);
+    }
+
+    @Override
+    public Optional<HttpServletRequest> getRequest() {
+        return Optional.ofNullable(request);
+    }
+
+}
@@ -128,17 +128,13 @@ public interface ValidateApi {
                     UserSessionFile file = getStorageService().
                         get().
                         store(mzTabString, UUID.randomUUID(), SLOT.MZTABFILE);
-                    UserSessionFile mappingFile = getStorageService().
-                        get().
-                        store(ValidateApi.class.getResource(
-                            "/mappings/mzTab-M-mapping.xml"), file.
-                                getSessionId(), SLOT.MAPPINGFILE);
                     List<ValidationMessage> messages = getValidationService().
                         get().
                         validate(ValidationService.MzTabVersion.MZTAB_2_0, file,
                             maxErrors, ValidationLevel.valueOf(
                                 level == null ? "INFO" : level.toUpperCase()),
-                            semanticValidation, mappingFile);
+                            semanticValidation, null, ApiClients.clientOf(
+                            getRequest()));
                     messages = messages.subList(0, Math.min(messages.size(),
                         maxErrors));
                     HttpStatus status = HttpStatus.OK;
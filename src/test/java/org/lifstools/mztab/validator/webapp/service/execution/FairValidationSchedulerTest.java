@@ -0,0 +1,222 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.execution;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+public class FairValidationSchedulerTest {
+
+    private static final long SMALL_COST_THRESHOLD = 100;
+    private static final Duration AGING = Duration.ofSeconds(1);
+
+    private final MutableClock clock = new MutableClock();
+    private final List<String> order = Collections.synchronizedList(
+        new ArrayList<>());
+    private final CountDownLatch releaseWorker = new CountDownLatch(1);
+    private FairValidationScheduler scheduler;
+
+    @AfterEach
+    public void tearDown() {
+        releaseWorker.countDown();
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    private FairValidationScheduler scheduler(int threads, int reservedThreads) {
+        scheduler = new FairValidationScheduler(threads, reservedThreads,
+            SMALL_COST_THRESHOLD, 1, AGING, clock);
+        return scheduler;
+    }
+
+    /*
+     * Occupies a worker with a small job, so that the following jobs queue
+     * up until the worker is released.
+     */
+    private void blockWorker() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        scheduler.execute(() -> {
+            blocked.countDown();
+            await(releaseWorker);
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+    }
+
+    private Runnable job(String name, CountDownLatch done) {
+        return () -> {
+            order.add(name);
+            done.countDown();
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().
+                interrupt();
+        }
+    }
+
+    @Test
+    public void testServesClientsRoundRobin() throws Exception {
+        scheduler(1, 0);
+        blockWorker();
+        CountDownLatch done = new CountDownLatch(5);
+        scheduler.execute(job("a1", done), "a", 0);
+        scheduler.execute(job("a2", done), "a", 0);
+        scheduler.execute(job("a3", done), "a", 0);
+        scheduler.execute(job("b1", done), "b", 0);
+        scheduler.execute(job("c1", done), "c", 0);
+        assertEquals(5, scheduler.getQueued());
+        releaseWorker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a1", "b1", "c1", "a2", "a3"), order);
+    }
+
+    @Test
+    public void testRunsCheapestJobOfClientFirst() throws Exception {
+        scheduler(1, 0);
+        blockWorker();
+        CountDownLatch done = new CountDownLatch(3);
+        scheduler.execute(job("30", done), "a", 30);
+        scheduler.execute(job("10", done), "a", 10);
+        scheduler.execute(job("20", done), "a", 20);
+        releaseWorker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("10", "20", "30"), order);
+    }
+
+    @Test
+    public void testAgingPromotesWaitingJob() throws Exception {
+        scheduler(1, 0);
+        blockWorker();
+        CountDownLatch done = new CountDownLatch(2);
+        scheduler.execute(job("old", done), "a", 1000);
+        // waiting ten aging intervals reduces the cost to 1000 / 11
+        clock.advance(AGING.multipliedBy(10));
+        scheduler.execute(job("new", done), "a", 100);
+        releaseWorker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("old", "new"), order);
+    }
+
+    @Test
+    public void testKeepsLargeJobsOffReservedWorkers() throws Exception {
+        scheduler(2, 1);
+        CountDownLatch largeRunning = new CountDownLatch(1);
+        CountDownLatch releaseLarge = new CountDownLatch(1);
+        scheduler.execute(() -> {
+            largeRunning.countDown();
+            await(releaseLarge);
+        }, "a", SMALL_COST_THRESHOLD + 1);
+        assertTrue(largeRunning.await(5, TimeUnit.SECONDS));
+        CountDownLatch largeDone = new CountDownLatch(1);
+        CountDownLatch smallDone = new CountDownLatch(1);
+        scheduler.execute(job("large", largeDone), "a",
+            SMALL_COST_THRESHOLD + 1);
+        scheduler.execute(job("small", smallDone), "b", SMALL_COST_THRESHOLD);
+        // the small job passes the large one on the reserved worker
+        assertTrue(smallDone.await(5, TimeUnit.SECONDS));
+        assertEquals(1, scheduler.getQueued());
+        assertFalse(largeDone.await(100, TimeUnit.MILLISECONDS));
+        releaseLarge.countDown();
+        assertTrue(largeDone.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("small", "large"), order);
+    }
+
+    @Test
+    public void testRemovesQueuedJob() throws Exception {
+        scheduler(1, 0);
+        blockWorker();
+        CountDownLatch done = new CountDownLatch(1);
+        Runnable removed = job("removed", done);
+        scheduler.execute(removed, "a", 0);
+        scheduler.execute(job("kept", done), "b", 0);
+        assertTrue(scheduler.remove(removed));
+        assertFalse(scheduler.remove(removed));
+        assertEquals(1, scheduler.getQueued());
+        releaseWorker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("kept"), order);
+    }
+
+    @Test
+    public void testRejectsJobsAfterShutdown() {
+        scheduler(1, 0).
+            shutdown();
+        assertThrows(RejectedExecutionException.class,
+            () -> scheduler.execute(() -> {
+        }, "a", 0));
+    }
+
+    @Test
+    public void testEstimatesSemanticValidationCost() {
+        FairValidationScheduler scaled = new FairValidationScheduler(1, 0,
+            SMALL_COST_THRESHOLD, 4, AGING, clock);
+        try {
+            assertEquals(100, scaled.estimateCost(100, false));
+            assertEquals(400, scaled.estimateCost(100, true));
+        } finally {
+            scaled.shutdown();
+        }
+    }
+
+    private static class MutableClock extends Clock {
+
+        private volatile Instant now = Instant.parse("2020-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
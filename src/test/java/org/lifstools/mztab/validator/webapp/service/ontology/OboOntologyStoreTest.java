@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.ontology;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+public class OboOntologyStoreTest {
+
+    /*
+     * X:1 - X:2 - X:4 - X:6
+     *     \ X:3 - X:5 /
+     *             X:7 (is_a X:2 and X:5)
+     */
+    private static OboOntologyStore dag() {
+        return new OboOntologyStore.Builder().
+            addTerm("X:1", "root", false, Collections.emptyList()).
+            addTerm("X:2", "left", false, List.of("X:1")).
+            addTerm("X:3", "right", false, List.of("X:1")).
+            addTerm("X:4", "left child", false, List.of("X:2")).
+            addTerm("X:5", "right child", false, List.of("X:3")).
+            addTerm("X:6", "shared leaf", false, List.of("X:4", "X:5")).
+            addTerm("X:7", "shared child", true, List.of("X:2", "X:5")).
+            build();
+    }
+
+    @Test
+    public void testAncestorsInTreeAndAcrossSubtrees() {
+        OboOntologyStore store = dag();
+        int root = store.indexOf("X:1");
+        int left = store.indexOf("X:2");
+        int right = store.indexOf("X:3");
+        int rightChild = store.indexOf("X:5");
+        int sharedLeaf = store.indexOf("x:6");
+        int sharedChild = store.indexOf("X:7");
+        assertTrue(store.isAncestorOf(root, sharedLeaf));
+        assertTrue(store.isAncestorOf(left, sharedLeaf));
+        assertTrue(store.isAncestorOf(right, sharedLeaf));
+        assertTrue(store.isAncestorOf(rightChild, sharedLeaf));
+        assertTrue(store.isAncestorOf(left, sharedChild));
+        assertTrue(store.isAncestorOf(right, sharedChild));
+        assertFalse(store.isAncestorOf(sharedLeaf, root));
+        assertFalse(store.isAncestorOf(left, right));
+        assertFalse(store.isAncestorOf(store.indexOf("X:4"), sharedChild));
+        assertFalse(store.isAncestorOf(root, root));
+        assertEquals(-1, store.indexOf("X:8"));
+    }
+
+    @Test
+    public void testAncestorsOnCycle() {
+        OboOntologyStore store = new OboOntologyStore.Builder().
+            addTerm("X:1", "root", false, Collections.emptyList()).
+            addTerm("X:2", "a", false, List.of("X:1", "X:3")).
+            addTerm("X:3", "b", false, List.of("X:2")).
+            addTerm("X:4", "c", false, List.of("X:3")).
+            addTerm("X:5", "d", false, List.of("X:6")).
+            addTerm("X:6", "e", false, List.of("X:5")).
+            build();
+        assertTrue(store.isAncestorOf(store.indexOf("X:1"), store.indexOf(
+            "X:4")));
+        assertTrue(store.isAncestorOf(store.indexOf("X:2"), store.indexOf(
+            "X:4")));
+        assertTrue(store.isAncestorOf(store.indexOf("X:3"), store.indexOf(
+            "X:4")));
+        assertFalse(store.isAncestorOf(store.indexOf("X:1"), store.indexOf(
+            "X:5")));
+        // terms without a root are numbered as well
+        assertTrue(store.isAncestorOf(store.indexOf("X:5"), store.indexOf(
+            "X:6")) || store.isAncestorOf(store.indexOf("X:6"), store.
+            indexOf("X:5")));
+    }
+
+    @Test
+    public void testAncestorsMatchClosureOfRandomDag() {
+        Random random = new Random(42);
+        int size = 500;
+        OboOntologyStore.Builder builder = new OboOntologyStore.Builder();
+        List<List<Integer>> parents = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            List<Integer> termParents = new ArrayList<>();
+            List<String> isA = new ArrayList<>();
+            int count = i == 0 ? 0 : 1 + random.nextInt(3);
+            for (int p = 0; p < count; p++) {
+                int parent = random.nextInt(i);
+                termParents.add(parent);
+                isA.add("X:" + parent);
+            }
+            parents.add(termParents);
+            builder.addTerm("X:" + i, "term " + i, false, isA);
+        }
+        OboOntologyStore store = builder.build();
+        for (int i = 0; i < size; i++) {
+            Set<Integer> ancestors = new HashSet<>();
+            Deque<Integer> queue = new ArrayDeque<>(parents.get(i));
+            while (!queue.isEmpty()) {
+                int parent = queue.poll();
+                if (ancestors.add(parent)) {
+                    queue.addAll(parents.get(parent));
+                }
+            }
+            int term = store.indexOf("X:" + i);
+            for (int j = 0; j < size; j++) {
+                assertEquals(ancestors.contains(j), store.isAncestorOf(store.
+                    indexOf("X:" + j), term), "X:" + j + " ancestor of X:" + i);
+            }
+        }
+    }
+
+    @Test
+    public void testDescendants() {
+        OboOntologyStore store = dag();
+        int root = store.indexOf("X:1");
+        TermDescendants all = store.getDescendants(root, 10);
+        assertEquals(new HashSet<>(Arrays.asList("X:2", "X:3", "X:4", "X:5",
+            "X:6", "X:7")), all.getAccessions());
+        assertTrue(all.isComplete());
+        TermDescendants twoLevels = store.getDescendants(root, 2);
+        assertEquals(new HashSet<>(Arrays.asList("X:2", "X:3", "X:4", "X:5",
+            "X:7")), twoLevels.getAccessions());
+        assertFalse(twoLevels.isComplete());
+    }
+
+    @Test
+    public void testFindDescendantsByLabelSkipsObsoleteTerms() {
+        OboOntologyStore store = dag();
+        List<Integer> matches = store.findDescendantsByLabel(store.indexOf(
+            "X:1"), "SHARED", 10);
+        assertEquals(List.of(store.indexOf("X:6")), matches);
+        assertEquals(List.of(store.indexOf("X:4"), store.indexOf("X:5")),
+            store.findDescendantsByLabel(store.indexOf("X:1"), "child", 10));
+        assertEquals(1, store.findDescendantsByLabel(store.indexOf("X:1"),
+            "child", 1).
+            size());
+    }
+}
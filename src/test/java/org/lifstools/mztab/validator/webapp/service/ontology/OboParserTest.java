@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.ontology;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+public class OboParserTest {
+
+    private static final String OBO = String.join("\n",
+        "format-version: 1.2",
+        "data-version: 4.1.30",
+        "ontology: MS",
+        "property_value: http://purl.org/dc/elements/1.1/title \"PSI-MS\" xsd:string",
+        "! a comment",
+        "",
+        "[Term]",
+        "id: MS:0000000",
+        "name: Proteomics Standards Initiative Mass Spectrometry Vocabularies",
+        "",
+        "[Term]",
+        "id: MS:1000031",
+        "name: instrument model",
+        "def: \"Instrument model name not including the vendor's name!\" [PSI:MS]",
+        "is_a: MS:0000000 ! Proteomics Standards Initiative Mass Spectrometry Vocabularies",
+        "",
+        "[Typedef]",
+        "id: part_of",
+        "name: part_of",
+        "is_a: MS:1000031",
+        "",
+        "[Term]",
+        "id: MS:1000121",
+        "name: SCIEX instrument model",
+        "is_a: MS:1000031 {source=\"PSI:MS\"} ! instrument model",
+        "",
+        "[Term]",
+        "id: MS:1000001",
+        "name: sample number",
+        "is_obsolete: true");
+
+    @Test
+    public void testParseHeaderAndTerms() throws IOException {
+        OboOntologyStore.Builder builder = new OboOntologyStore.Builder();
+        OntologyInfo ontology = new OboParser().parse(new BufferedReader(
+            new StringReader(OBO)), "psi-ms", builder);
+        assertEquals(new OntologyInfo("ms", "PSI-MS", "4.1.30"), ontology);
+        OboOntologyStore store = builder.build();
+        assertEquals(ontology, store.getOntology("MS").
+            get());
+        assertEquals(4, store.size());
+        assertEquals(-1, store.indexOf("part_of"));
+        int model = store.indexOf("MS:1000031");
+        int sciex = store.indexOf("MS:1000121");
+        assertEquals(new TermInfo("MS:1000031", "instrument model", false,
+            List.of("MS:0000000")), store.getTermInfo(model));
+        assertEquals(new TermInfo("MS:1000121", "SCIEX instrument model",
+            false, List.of("MS:1000031")), store.getTermInfo(sciex));
+        assertTrue(store.isAncestorOf(store.indexOf("MS:0000000"), sciex));
+        assertTrue(store.isObsolete(store.indexOf("MS:1000001")));
+        assertFalse(store.isObsolete(model));
+    }
+
+    @Test
+    public void testDefaultIdWithoutHeader() throws IOException {
+        OboOntologyStore.Builder builder = new OboOntologyStore.Builder();
+        OntologyInfo ontology = new OboParser().parse(new BufferedReader(
+            new StringReader("[Term]\nid: UO:0000000\nname: unit")), "UO",
+            builder);
+        assertEquals("uo", ontology.getId());
+        assertEquals("UO", ontology.getTitle());
+        assertNull(ontology.getVersion());
+        assertEquals("unit", builder.build().
+            getLabel(0));
+    }
+
+    @Test
+    public void testRepeatedTermsMergeParents() throws IOException {
+        OboOntologyStore.Builder builder = new OboOntologyStore.Builder();
+        new OboParser().parse(new BufferedReader(new StringReader(String.
+            join("\n", "[Term]", "id: X:1", "name: a", "[Term]", "id: X:2",
+                "name: b", "[Term]", "id: X:3", "name: c", "is_a: X:1",
+                "[Term]", "id: X:3", "name: ignored", "is_a: X:2"))), "x",
+            builder);
+        OboOntologyStore store = builder.build();
+        int term = store.indexOf("X:3");
+        assertEquals("c", store.getLabel(term));
+        assertEquals(List.of("X:1", "X:2"), store.getTermInfo(term).
+            getParents());
+    }
+}
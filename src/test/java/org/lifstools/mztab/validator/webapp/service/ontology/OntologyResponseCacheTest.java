@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.ontology;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+public class OntologyResponseCacheTest {
+
+    private Path directory;
+    private MutableClock clock;
+    private OntologyResponseCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("ols-cache");
+        clock = new MutableClock();
+        // no memory level, every hit is read from disk
+        cache = new OntologyResponseCache(directory, 0, Duration.ofDays(1),
+            Duration.ofHours(1), 2, Duration.ofDays(1), clock);
+        loads = new AtomicInteger();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).
+                forEach((path) -> path.toFile().
+                delete());
+        }
+    }
+
+    @Test
+    public void testSweepKeepsEntriesThatExpireLast() throws IOException {
+        assertEquals("a", get("a", "a"));
+        assertNull(get("b", null));
+        clock.advance(Duration.ofHours(2));
+        assertEquals("c", get("c", "c"));
+        assertEquals("d", get("d", "d"));
+        assertEquals(4, loads.get());
+        assertEquals(4, countFiles());
+
+        cache.sweepDisk();
+
+        assertEquals(2, countFiles());
+        assertEquals("c", get("c", "other"));
+        assertEquals("d", get("d", "other"));
+        assertEquals(4, loads.get());
+        assertEquals("a", get("a", "a"));
+        assertEquals(5, loads.get());
+    }
+
+    @Test
+    public void testSweepKeepsExpiredEntriesForStaleRetention() throws
+        IOException {
+        get("a", "a");
+        clock.advance(Duration.ofHours(36));
+        cache.sweepDisk();
+        assertEquals(1, countFiles());
+        assertEquals("a", cache.get("a", () -> {
+            throw new OntologyUnavailableException("down");
+        }, Function.identity(), Function.identity()));
+        clock.advance(Duration.ofDays(1));
+        cache.sweepDisk();
+        assertEquals(0, countFiles());
+    }
+
+    private String get(String key, String value) {
+        return cache.get(key, () -> {
+            loads.incrementAndGet();
+            return value;
+        }, Function.identity(), Function.identity());
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).
+                count();
+        }
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2020-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
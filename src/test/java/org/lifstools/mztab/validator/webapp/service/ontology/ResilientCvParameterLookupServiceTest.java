@@ -0,0 +1,218 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.ontology;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+public class ResilientCvParameterLookupServiceTest {
+
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final Duration OPEN_DURATION = Duration.ofSeconds(60);
+
+    private MutableClock clock;
+    private ResilientCvParameterLookupService service;
+    private AtomicInteger calls;
+
+    @BeforeEach
+    public void setUp() {
+        clock = new MutableClock();
+        service = new ResilientCvParameterLookupService(null, 2, Duration.
+            ofMillis(500), Duration.ofMillis(100), FAILURE_THRESHOLD,
+            OPEN_DURATION, clock);
+        calls = new AtomicInteger();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    private Supplier<String> succeeding() {
+        return () -> {
+            calls.incrementAndGet();
+            return "ok";
+        };
+    }
+
+    private Supplier<String> failing() {
+        return () -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("remote failure");
+        };
+    }
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            assertThrows(OntologyUnavailableException.class, () -> service.
+                call(failing()));
+        }
+    }
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        fail(FAILURE_THRESHOLD - 1);
+        assertFalse(service.isOpen());
+        fail(1);
+        assertTrue(service.isOpen());
+        assertEquals(FAILURE_THRESHOLD, calls.get());
+    }
+
+    @Test
+    public void testSuccessResetsConsecutiveFailures() {
+        fail(FAILURE_THRESHOLD - 1);
+        assertEquals("ok", service.call(succeeding()));
+        fail(FAILURE_THRESHOLD - 1);
+        assertFalse(service.isOpen());
+    }
+
+    @Test
+    public void testOpenCircuitRejectsWithoutCalling() {
+        fail(FAILURE_THRESHOLD);
+        int callsBefore = calls.get();
+        clock.advance(OPEN_DURATION.minusMillis(1));
+        assertThrows(OntologyUnavailableException.class, () -> service.call(
+            succeeding()));
+        assertEquals(callsBefore, calls.get());
+        assertTrue(service.isOpen());
+    }
+
+    @Test
+    public void testSuccessfulTrialClosesCircuit() {
+        fail(FAILURE_THRESHOLD);
+        clock.advance(OPEN_DURATION);
+        assertEquals("ok", service.call(succeeding()));
+        assertFalse(service.isOpen());
+        assertEquals("ok", service.call(succeeding()));
+    }
+
+    @Test
+    public void testFailedTrialReopensCircuit() {
+        fail(FAILURE_THRESHOLD);
+        clock.advance(OPEN_DURATION);
+        fail(1);
+        assertTrue(service.isOpen());
+        int callsBefore = calls.get();
+        // the open duration starts again with the failed trial
+        clock.advance(OPEN_DURATION.minusMillis(1));
+        assertThrows(OntologyUnavailableException.class, () -> service.call(
+            succeeding()));
+        assertEquals(callsBefore, calls.get());
+        clock.advance(Duration.ofMillis(1));
+        assertEquals("ok", service.call(succeeding()));
+        assertFalse(service.isOpen());
+    }
+
+    @Test
+    public void testTimeoutCountsAsFailure() {
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            assertThrows(OntologyUnavailableException.class, () -> service.
+                call(() -> {
+                    try {
+                        Thread.sleep(5000);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().
+                            interrupt();
+                    }
+                    return "late";
+                }));
+        }
+        assertTrue(service.isOpen());
+    }
+
+    /*
+     * A lookup stuck in IO that ignores interrupts keeps its permit after the
+     * caller gave up, further lookups are rejected as unavailable instead of
+     * failing with a RejectedExecutionException.
+     */
+    @Test
+    public void testStuckLookupsKeepTheirPermits() throws Exception {
+        CountDownLatch respond = new CountDownLatch(1);
+        Supplier<String> stuck = () -> {
+            calls.incrementAndGet();
+            boolean answered = false;
+            while (!answered) {
+                try {
+                    answered = respond.await(1, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    // ignored, like blocking socket reads
+                }
+            }
+            return "late";
+        };
+        assertThrows(OntologyUnavailableException.class, () -> service.call(
+            stuck));
+        assertThrows(OntologyUnavailableException.class, () -> service.call(
+            stuck));
+        assertThrows(OntologyUnavailableException.class, () -> service.call(
+            succeeding()));
+        assertEquals(2, calls.get());
+        assertFalse(service.isOpen());
+        respond.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        String response = null;
+        while (response == null && System.currentTimeMillis() < deadline) {
+            try {
+                response = service.call(succeeding());
+            } catch (OntologyUnavailableException ex) {
+                Thread.sleep(10);
+            }
+        }
+        assertEquals("ok", response);
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2020-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.validation;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lifstools.mztab.validator.webapp.domain.ValidationLevel;
+import org.lifstools.mztab.validator.webapp.domain.ValidationReport;
+import org.lifstools.mztab.validator.webapp.service.ValidationService.MzTabVersion;
+import org.lifstools.mztab.validator.webapp.service.execution.FairValidationScheduler;
+
+/**
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+public class InFlightValidationsTest {
+
+    private static final ValidationCacheKey KEY = key("abc");
+
+    private FairValidationScheduler scheduler;
+    private InFlightValidations inFlightValidations;
+    private AtomicInteger started;
+    private CountDownLatch workerBlocked;
+    private CountDownLatch releaseWorker;
+
+    private static ValidationCacheKey key(String fileHash) {
+        return new ValidationCacheKey(fileHash, MzTabVersion.MZTAB_2_0,
+            ValidationLevel.INFO, 100, false,
+            CvMappingRuleSetCache.DEFAULT_RULE_SET_ID);
+    }
+
+    @BeforeEach
+    public void setUp() {
+        scheduler = new FairValidationScheduler(1, 0, Long.MAX_VALUE, 1,
+            Duration.ofSeconds(30));
+        inFlightValidations = new InFlightValidations();
+        started = new AtomicInteger();
+        workerBlocked = new CountDownLatch(1);
+        releaseWorker = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        releaseWorker.countDown();
+        scheduler.shutdown();
+    }
+
+    /*
+     * Occupies the only worker, so that submitted validations stay queued.
+     */
+    private void blockWorker() throws InterruptedException {
+        scheduler.execute(() -> {
+            workerBlocked.countDown();
+            try {
+                releaseWorker.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().
+                    interrupt();
+            }
+        });
+        assertTrue(workerBlocked.await(5, TimeUnit.SECONDS));
+    }
+
+    private CompletableFuture<ValidationReport> request(ValidationCacheKey key,
+        UUID sessionId, Callable<ValidationReport> validation) {
+        return inFlightValidations.attachOrStart(key, sessionId, (task) -> {
+            started.incrementAndGet();
+            return task.submit(scheduler, sessionId.toString(), 0, validation);
+        });
+    }
+
+    @Test
+    public void testCoalescesConcurrentRequests() throws Exception {
+        blockWorker();
+        ValidationReport report = new ValidationReport();
+        CompletableFuture<ValidationReport> first = request(KEY, UUID.
+            randomUUID(), () -> report);
+        CompletableFuture<ValidationReport> second = request(KEY, UUID.
+            randomUUID(), () -> report);
+        assertEquals(1, started.get());
+        assertTrue(inFlightValidations.getProgress(KEY).
+            isPresent());
+        releaseWorker.countDown();
+        assertSame(report, first.get(5, TimeUnit.SECONDS));
+        assertSame(report, second.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDetachKeepsValidationForOtherSessions() throws Exception {
+        blockWorker();
+        ValidationReport report = new ValidationReport();
+        UUID cancelling = UUID.randomUUID();
+        CompletableFuture<ValidationReport> first = request(KEY, cancelling,
+            () -> report);
+        CompletableFuture<ValidationReport> second = request(KEY, UUID.
+            randomUUID(), () -> report);
+        assertTrue(inFlightValidations.cancel(cancelling));
+        assertTrue(first.isCancelled());
+        assertEquals(1, scheduler.getQueued());
+        releaseWorker.countDown();
+        assertSame(report, second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, started.get());
+    }
+
+    @Test
+    public void testCancellingLastSessionRemovesQueuedValidation() throws Exception {
+        blockWorker();
+        AtomicBoolean ran = new AtomicBoolean();
+        UUID sessionId = UUID.randomUUID();
+        CompletableFuture<ValidationReport> waiter = request(KEY, sessionId,
+            () -> {
+                ran.set(true);
+                return new ValidationReport();
+            });
+        assertEquals(1, scheduler.getQueued());
+        assertTrue(inFlightValidations.cancel(sessionId));
+        assertTrue(waiter.isCancelled());
+        assertEquals(0, scheduler.getQueued());
+        assertFalse(inFlightValidations.getProgress(KEY).
+            isPresent());
+        releaseWorker.countDown();
+        // a new request for the same input starts a new validation
+        ValidationReport report = new ValidationReport();
+        assertSame(report, request(KEY, UUID.randomUUID(), () -> report).
+            get(5, TimeUnit.SECONDS));
+        assertEquals(2, started.get());
+        assertFalse(ran.get());
+    }
+
+    @Test
+    public void testCancellingInterruptsRunningValidation() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        UUID sessionId = UUID.randomUUID();
+        CompletableFuture<ValidationReport> waiter = request(KEY, sessionId,
+            () -> {
+                running.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException ex) {
+                    interrupted.countDown();
+                    throw ex;
+                }
+                return new ValidationReport();
+            });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertTrue(inFlightValidations.cancel(sessionId));
+        assertTrue(waiter.isCancelled());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        // the worker is available for the next validation
+        ValidationReport report = new ValidationReport();
+        assertSame(report, request(key("def"), UUID.randomUUID(), () -> report).
+            get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCancelAfterCompletionIsIgnored() throws Exception {
+        UUID sessionId = UUID.randomUUID();
+        ValidationReport report = new ValidationReport();
+        CompletableFuture<ValidationReport> waiter = request(KEY, sessionId,
+            () -> report);
+        assertSame(report, waiter.get(5, TimeUnit.SECONDS));
+        assertFalse(inFlightValidations.cancel(sessionId));
+        assertFalse(waiter.isCancelled());
+    }
+
+    /*
+     * A session that never cancels must always receive a report, no matter
+     * how its request interleaves with another session cancelling the same
+     * validation.
+     */
+    @Test
+    public void testAttachRacingWithCancel() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            ValidationCacheKey key = key("race-" + i);
+            ValidationReport report = new ValidationReport();
+            UUID cancelling = UUID.randomUUID();
+            request(key, cancelling, () -> report);
+            CountDownLatch go = new CountDownLatch(1);
+            CompletableFuture<CompletableFuture<ValidationReport>> waiting = CompletableFuture.
+                supplyAsync(() -> {
+                    try {
+                        go.await();
+                    } catch (InterruptedException ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                    return request(key, UUID.randomUUID(), () -> report);
+                });
+            go.countDown();
+            inFlightValidations.cancel(cancelling);
+            CompletableFuture<ValidationReport> waiter = waiting.get(5,
+                TimeUnit.SECONDS);
+            assertNotNull(waiter);
+            assertSame(report, waiter.get(5, TimeUnit.SECONDS),
+                "Iteration " + i);
+        }
+    }
+}
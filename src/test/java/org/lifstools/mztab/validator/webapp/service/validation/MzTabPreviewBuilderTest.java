@@ -0,0 +1,204 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.validation;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lifstools.mztab.validator.webapp.domain.PreviewTable;
+import org.lifstools.mztab.validator.webapp.service.validation.MzTabPreviewBuilder.LineCounter;
+
+/**
+ * Uses small serializers in place of the jmzTab-m writer mappings, which
+ * write the lines of a section in the same way.
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+public class MzTabPreviewBuilderTest {
+
+    private static final CsvSchema SCHEMA = CsvSchema.builder().
+        addColumn("SMH").
+        addColumn("SML_ID").
+        addColumn("chemical_name").
+        addColumn("theoretical_neutral_mass").
+        addColumn("opt_global_note").
+        build().
+        withNullValue("null").
+        withArrayElementSeparator("|");
+
+    private CsvMapper mapper;
+    private LineCounter lineCounter;
+
+    private static class Row {
+
+        final int id;
+        final List<String> names;
+        final Double mass;
+        final String note;
+
+        Row(int id, List<String> names, Double mass, String note) {
+            this.id = id;
+            this.names = names;
+            this.mass = mass;
+            this.note = note;
+        }
+    }
+
+    private static class Meta {
+
+        final List<String[]> items = new ArrayList<>();
+
+        Meta add(String key, String value) {
+            items.add(new String[]{key, value});
+            return this;
+        }
+    }
+
+    @BeforeEach
+    public void setUp() {
+        SimpleModule module = new SimpleModule();
+        module.addSerializer(Row.class, new JsonSerializer<Row>() {
+            @Override
+            public void serialize(Row row, JsonGenerator jg,
+                SerializerProvider sp) throws IOException {
+                jg.writeStartObject();
+                jg.writeStringField("SMH", "SML");
+                jg.writeNumberField("SML_ID", row.id);
+                jg.writeArrayFieldStart("chemical_name");
+                for (String name : row.names) {
+                    jg.writeString(name);
+                }
+                jg.writeEndArray();
+                if (row.mass == null) {
+                    jg.writeNullField("theoretical_neutral_mass");
+                } else {
+                    jg.writeNumberField("theoretical_neutral_mass", row.mass);
+                }
+                if (row.note != null) {
+                    jg.writeStringField("opt_global_note", row.note);
+                }
+                jg.writeEndObject();
+            }
+        });
+        module.addSerializer(Meta.class, new JsonSerializer<Meta>() {
+            @Override
+            public void serialize(Meta meta, JsonGenerator jg,
+                SerializerProvider sp) throws IOException {
+                for (String[] item : meta.items) {
+                    jg.writeStartObject();
+                    jg.writeStringField("prefix", "MTD");
+                    jg.writeStringField("key", item[0]);
+                    jg.writeStringField("value", item[1]);
+                    jg.writeEndObject();
+                }
+            }
+        });
+        mapper = new CsvMapper();
+        mapper.registerModule(module);
+        lineCounter = new LineCounter();
+    }
+
+    private static List<Row> rows(int count) {
+        List<Row> rows = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            rows.add(new Row(i, Arrays.asList("name" + i), 100.0 + i, null));
+        }
+        return rows;
+    }
+
+    @Test
+    public void testProjectsWrittenFields() throws IOException {
+        PreviewTable table = new MzTabPreviewBuilder(10).table(mapper, SCHEMA,
+            Arrays.asList(new Row(1, Arrays.asList("a", "b"), null, "x"),
+                new Row(2, Collections.emptyList(), 180.5, null)), lineCounter);
+        assertEquals(Arrays.asList(PreviewTable.LINE_NUMBER, "SMH", "SML_ID",
+            "chemical_name", "theoretical_neutral_mass", "opt_global_note"),
+            table.getColumns());
+        assertEquals("SML", table.getValue(0, "SMH"));
+        assertEquals("1", table.getValue(0, "SML_ID"));
+        assertEquals("a|b", table.getValue(0, "chemical_name"));
+        assertEquals("null", table.getValue(0, "theoretical_neutral_mass"));
+        assertEquals("x", table.getValue(0, "opt_global_note"));
+        assertEquals("", table.getValue(1, "chemical_name"));
+        assertEquals("180.5", table.getValue(1, "theoretical_neutral_mass"));
+        // columns that were not written are empty
+        assertEquals("", table.getValue(1, "opt_global_note"));
+    }
+
+    @Test
+    public void testProjectsMetadataLines() throws IOException {
+        PreviewTable table = new MzTabPreviewBuilder(10).metadataTable(mapper,
+            SCHEMA, new Meta().add("mzTab-version", "2.0.0-M").
+                add("title", "a\tb"), lineCounter);
+        assertEquals(2, table.getTotalRows());
+        assertEquals("MTD", table.getValue(0, "PREFIX"));
+        assertEquals("mzTab-version", table.getValue(0, "KEY"));
+        assertEquals("2.0.0-M", table.getValue(0, "VALUE"));
+        assertEquals("a\tb", table.getValue(1, "VALUE"));
+        assertEquals("2", table.getValue(1, PreviewTable.LINE_NUMBER));
+    }
+
+    @Test
+    public void testLimitsRowsAndCountsLines() throws IOException {
+        MzTabPreviewBuilder builder = new MzTabPreviewBuilder(2);
+        PreviewTable metadata = builder.metadataTable(mapper, SCHEMA,
+            new Meta().add("a", "1").
+                add("b", "2").
+                add("c", "3"), lineCounter);
+        assertEquals(2, metadata.getRows().
+            size());
+        assertEquals(3, metadata.getTotalRows());
+        assertTrue(metadata.isTruncated());
+        PreviewTable summary = builder.table(mapper, SCHEMA, rows(5),
+            lineCounter);
+        assertEquals(2, summary.getRows().
+            size());
+        assertEquals(5, summary.getTotalRows());
+        assertTrue(summary.isTruncated());
+        // 3 metadata lines, an empty line and the header
+        assertEquals("6", summary.getValue(0, PreviewTable.LINE_NUMBER));
+        assertEquals("7", summary.getValue(1, PreviewTable.LINE_NUMBER));
+        assertEquals("2", summary.getValue(1, "SML_ID"));
+        PreviewTable features = builder.table(mapper, SCHEMA, rows(1),
+            lineCounter);
+        // the rows left out of the summary preview still count
+        assertEquals("13", features.getValue(0, PreviewTable.LINE_NUMBER));
+        assertFalse(features.isTruncated());
+    }
+
+    @Test
+    public void testEmptySectionKeepsLineNumbers() throws IOException {
+        MzTabPreviewBuilder builder = new MzTabPreviewBuilder(10);
+        assertSame(PreviewTable.EMPTY, builder.table(mapper, SCHEMA,
+            Collections.emptyList(), lineCounter));
+        assertEquals("3", builder.table(mapper, SCHEMA, rows(1), lineCounter).
+            getValue(0, PreviewTable.LINE_NUMBER));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.validation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lifstools.mztab.validator.webapp.domain.ValidationProgress;
+import org.lifstools.mztab.validator.webapp.domain.ValidationProgress.Stage;
+
+/**
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+public class ParserReadProbeTest {
+
+    private static final int MTD_LINES = 10;
+    private static final int SML_LINES = 1000;
+
+    private Path file;
+    private ValidationProgress progress;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        file = Files.createTempFile("probe", ".mztab");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < MTD_LINES; i++) {
+            content.append("MTD\tmzTab-version\t2.0.0-M\n");
+        }
+        content.append("SMH\tSML_ID\tdatabase_identifier\n");
+        for (int i = 0; i < SML_LINES; i++) {
+            content.append("SML\t").
+                append(String.format("%06d", i)).
+                append("\tHMDB:HMDB0000001\n");
+        }
+        Files.write(file, content.toString().
+            getBytes(StandardCharsets.UTF_8));
+        progress = new ValidationProgress();
+        progress.setStage(Stage.PARSING);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static boolean procfsAvailable() {
+        return Files.isDirectory(Paths.get("/proc/self/fdinfo"));
+    }
+
+    @Test
+    public void testReportsPositionOfOpenFile() throws IOException {
+        if (!procfsAvailable()) {
+            return;
+        }
+        ParserReadProbe probe = new ParserReadProbe(file, progress);
+        long total = Files.size(file);
+        assertEquals(total, progress.getBytesTotal());
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[(int) total / 2];
+            int read = in.read(buffer);
+            probe.update();
+            assertEquals(read, progress.getBytesRead());
+            assertEquals("SML", progress.getSection());
+            // every SML line has the same length
+            long expectedLines = Math.round((double) read / 28);
+            assertTrue(Math.abs(progress.getLinesRead() - expectedLines) <= 1,
+                "Estimated " + progress.getLinesRead() + " lines");
+            assertTrue(progress.getFraction() > Stage.PARSING.getFraction());
+            assertTrue(progress.getFraction() < Stage.SEMANTIC_VALIDATION.
+                getFraction());
+        }
+    }
+
+    @Test
+    public void testIgnoresClosedFile() throws IOException {
+        ParserReadProbe probe = new ParserReadProbe(file, progress);
+        probe.update();
+        assertEquals(0, progress.getBytesRead());
+        assertNull(progress.getSection());
+        assertEquals(Stage.PARSING.getFraction(), progress.getFraction());
+    }
+
+    @Test
+    public void testCountsWholeFileAfterParsing() throws IOException {
+        new ParserReadProbe(file, progress);
+        progress.setBytesRead(progress.getBytesTotal() / 2);
+        progress.setLinesRead(500);
+        progress.setStage(Stage.SEMANTIC_VALIDATION);
+        assertEquals(progress.getBytesTotal(), progress.getBytesRead());
+        assertTrue(Math.abs(progress.getLinesRead() - 1000) <= 1);
+        assertEquals(Stage.SEMANTIC_VALIDATION.getFraction(), progress.
+            getFraction());
+    }
+
+    @Test
+    public void testSectionOfHeaderLines() {
+        byte[] line = "SFH\tSMF_ID\n".getBytes(StandardCharsets.US_ASCII);
+        assertEquals("SMF", ParserReadProbe.sectionOf(line, 0, line.length));
+        byte[] comment = "COM\tcomment\n".getBytes(StandardCharsets.US_ASCII);
+        assertNull(ParserReadProbe.sectionOf(comment, 0, comment.length));
+    }
+}
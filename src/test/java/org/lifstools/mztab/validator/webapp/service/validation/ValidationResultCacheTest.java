@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 Leibniz Institut für Analytische Wissenschaften - ISAS e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.mztab.validator.webapp.service.validation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.lifstools.mztab.validator.webapp.domain.ValidationLevel;
+import org.lifstools.mztab.validator.webapp.domain.ValidationReport;
+import org.lifstools.mztab.validator.webapp.service.ValidationService.MzTabVersion;
+
+/**
+ *
+ * @author Nils Hoffmann nils.hoffmann@cebitec.uni-bielefeld.de;
+ */
+public class ValidationResultCacheTest {
+
+    private static ValidationCacheKey key(String fileHash) {
+        return new ValidationCacheKey(fileHash, MzTabVersion.MZTAB_2_0,
+            ValidationLevel.INFO, 100, true, CvMappingRuleSetCache.DEFAULT_RULE_SET_ID);
+    }
+
+    @Test
+    public void testHitForEqualKey() {
+        ValidationResultCache cache = new ValidationResultCache(10);
+        ValidationReport report = new ValidationReport();
+        cache.put(key("abc"), report);
+        assertSame(report, cache.get(key("abc")).
+            get());
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void testMissForDifferentParameters() {
+        ValidationResultCache cache = new ValidationResultCache(10);
+        cache.put(key("abc"), new ValidationReport());
+        String defaultRuleSet = CvMappingRuleSetCache.DEFAULT_RULE_SET_ID;
+        ValidationCacheKey[] others = {
+            key("abd"),
+            new ValidationCacheKey("abc", MzTabVersion.MZTAB_1_0,
+            ValidationLevel.INFO, 100, true, defaultRuleSet),
+            new ValidationCacheKey("abc", MzTabVersion.MZTAB_2_0,
+            ValidationLevel.ERROR, 100, true, defaultRuleSet),
+            new ValidationCacheKey("abc", MzTabVersion.MZTAB_2_0,
+            ValidationLevel.INFO, 50, true, defaultRuleSet),
+            new ValidationCacheKey("abc", MzTabVersion.MZTAB_2_0,
+            ValidationLevel.INFO, 100, false, defaultRuleSet),
+            new ValidationCacheKey("abc", MzTabVersion.MZTAB_2_0,
+            ValidationLevel.INFO, 100, true, "custom-rule-set-hash")
+        };
+        for (ValidationCacheKey other : others) {
+            assertFalse(cache.get(other).
+                isPresent(), "Unexpected hit for " + other);
+        }
+        assertEquals(others.length, cache.getMisses());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ValidationResultCache cache = new ValidationResultCache(2);
+        cache.put(key("a"), new ValidationReport());
+        cache.put(key("b"), new ValidationReport());
+        assertTrue(cache.get(key("a")).
+            isPresent());
+        cache.put(key("c"), new ValidationReport());
+        assertEquals(2, cache.size());
+        assertTrue(cache.get(key("a")).
+            isPresent());
+        assertFalse(cache.get(key("b")).
+            isPresent());
+        assertTrue(cache.get(key("c")).
+            isPresent());
+    }
+
+    @Test
+    public void testDisabledCacheStoresNothing() {
+        ValidationResultCache cache = new ValidationResultCache(0);
+        cache.put(key("a"), new ValidationReport());
+        assertEquals(0, cache.size());
+        assertFalse(cache.get(key("a")).
+            isPresent());
+    }
+}